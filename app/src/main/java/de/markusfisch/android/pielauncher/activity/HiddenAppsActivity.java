@@ -21,7 +21,6 @@ import android.widget.ListView;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
 
 import de.markusfisch.android.pielauncher.R;
 import de.markusfisch.android.pielauncher.adapter.HiddenAppsAdapter;
@@ -29,6 +28,7 @@ import de.markusfisch.android.pielauncher.app.PieLauncherApp;
 import de.markusfisch.android.pielauncher.content.AppMenu;
 import de.markusfisch.android.pielauncher.graphics.BackgroundBlur;
 import de.markusfisch.android.pielauncher.graphics.ToolbarBackground;
+import de.markusfisch.android.pielauncher.os.BackgroundScheduler;
 import de.markusfisch.android.pielauncher.view.SystemBars;
 import de.markusfisch.android.pielauncher.widget.Dialog;
 
@@ -84,6 +84,12 @@ public class HiddenAppsActivity extends Activity {
 		SystemBars.setNavigationBarColor(window, toolbarBackground.backgroundColor);
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		PieLauncherApp.scheduler.cancel(this);
+	}
+
 	private void initListView() {
 		listView = findViewById(R.id.apps);
 		listView.setEmptyView(findViewById(R.id.no_hidden_apps));
@@ -115,7 +121,8 @@ public class HiddenAppsActivity extends Activity {
 
 	private void loadHiddenApps() {
 		progressView.setVisibility(View.VISIBLE);
-		Executors.newSingleThreadExecutor().execute(() -> {
+		PieLauncherApp.scheduler.execute(
+				BackgroundScheduler.PRIORITY_PREVIEW, this, () -> {
 			final ArrayList<HiddenAppsAdapter.HiddenApp> hiddenApps =
 					new ArrayList<>();
 			for (String packageName :
@@ -6,6 +6,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.text.Editable;
+import android.text.InputType;
 import android.text.TextWatcher;
 import android.view.GestureDetector;
 import android.view.Menu;
@@ -36,6 +37,7 @@ public class HomeActivity extends Activity {
 	private boolean updateAfterTextChange = true;
 	private boolean showAllAppsOnResume = false;
 	private int immersiveMode = Preferences.IMMERSIVE_MODE_DISABLED;
+	private int textInputType;
 	private long pausedAt = 0L;
 
 	@Override
@@ -208,13 +210,17 @@ public class HomeActivity extends Activity {
 				searchInput.setBackgroundColor(toolbarBackground.getColor(y));
 			}
 		});
-		PieLauncherApp.appMenu.setUpdateListener(() -> {
-			searchInput.getText().clear();
+		PieLauncherApp.appMenu.setUpdateListener((progressive) -> {
+			// Keep what the user typed while apps are coming in.
+			if (!progressive) {
+				searchInput.getText().clear();
+			}
 			updateAppList();
 		});
 	}
 
 	private void initSearchInput() {
+		textInputType = searchInput.getInputType();
 		searchInput.addTextChangedListener(new TextWatcher() {
 			@Override
 			public void onTextChanged(CharSequence s, int start,
@@ -244,15 +250,19 @@ public class HomeActivity extends Activity {
 					return;
 				}
 				// Replace ". " before updateAppList().
-				if (endsWithDoubleSpace(e)) {
-					pieView.launchSelectedApp();
-				}
-				updateAppList();
-				// Check icon count after the list was updated.
-				if (prefs.autoLaunchMatching() &&
-						pieView.getIconCount() == 1) {
-					pieView.launchSelectedApp();
-				}
+				boolean launch = endsWithDoubleSpace(e);
+				String query = e.toString();
+				updateAppList(() -> {
+					// Only act on the result for what's in the field.
+					if (!query.equals(searchInput.getText().toString())) {
+						return;
+					}
+					// Check icon count after the list was updated.
+					if (launch || (prefs.autoLaunchMatching() &&
+							pieView.getIconCount() == 1)) {
+						pieView.launchSelectedApp();
+					}
+				});
 			}
 		});
 		searchInput.setOnEditorActionListener((v, actionId, event) -> {
@@ -343,6 +353,7 @@ public class HomeActivity extends Activity {
 			return;
 		}
 
+		updateSearchInputType();
 		searchInput.setVisibility(View.VISIBLE);
 		prefsButton.setVisibility(View.VISIBLE);
 		if (prefs.displayKeyboard()) {
@@ -357,7 +368,9 @@ public class HomeActivity extends Activity {
 		updateAfterTextChange = true;
 
 		// Remove filter and reset last scroll position.
-		if (!searchWasEmpty || pieView.isEmpty()) {
+		if (!searchWasEmpty || pieView.isEmpty() ||
+				// Apps may have been launched in the meantime.
+				prefs.getListOrder() == Preferences.LIST_ORDER_USAGE) {
 			updateAppList();
 		}
 
@@ -376,6 +389,17 @@ public class HomeActivity extends Activity {
 		pieView.hideList();
 	}
 
+	private void updateSearchInputType() {
+		// Show a phone keypad for T9 search.
+		int inputType = prefs.getSearchStrictness() ==
+				Preferences.SEARCH_STRICTNESS_T9
+				? InputType.TYPE_CLASS_PHONE
+				: textInputType;
+		if (searchInput.getInputType() != inputType) {
+			searchInput.setInputType(inputType);
+		}
+	}
+
 	private boolean isSearchVisible() {
 		return searchInput.getVisibility() == View.VISIBLE;
 	}
@@ -386,7 +410,11 @@ public class HomeActivity extends Activity {
 	}
 
 	private void updateAppList() {
-		pieView.filterAppList(searchInput.getText().toString());
+		updateAppList(null);
+	}
+
+	private void updateAppList(Runnable onUpdated) {
+		pieView.filterAppList(searchInput.getText().toString(), onUpdated);
 	}
 
 	private class FlingListener extends GestureDetector.SimpleOnGestureListener {
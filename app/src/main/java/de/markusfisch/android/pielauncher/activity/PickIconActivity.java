@@ -19,7 +19,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.Executors;
 
 import de.markusfisch.android.pielauncher.R;
 import de.markusfisch.android.pielauncher.adapter.PickIconAdapter;
@@ -27,6 +26,7 @@ import de.markusfisch.android.pielauncher.app.PieLauncherApp;
 import de.markusfisch.android.pielauncher.graphics.BackgroundBlur;
 import de.markusfisch.android.pielauncher.graphics.IconPack;
 import de.markusfisch.android.pielauncher.graphics.ToolbarBackground;
+import de.markusfisch.android.pielauncher.os.BackgroundScheduler;
 import de.markusfisch.android.pielauncher.view.SoftKeyboard;
 import de.markusfisch.android.pielauncher.view.SystemBars;
 import de.markusfisch.android.pielauncher.widget.Dialog;
@@ -148,6 +148,12 @@ public class PickIconActivity extends Activity {
 				toolbarBackground.backgroundColor);
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		PieLauncherApp.scheduler.cancel(this);
+	}
+
 	private void initGridView(String packageName) {
 		gridView = findViewById(R.id.icons);
 		gridView.setOnItemClickListener((parent, view, position, id) -> {
@@ -259,7 +265,8 @@ public class PickIconActivity extends Activity {
 			return;
 		}
 		progressView.setVisibility(View.VISIBLE);
-		Executors.newSingleThreadExecutor().execute(() -> {
+		PieLauncherApp.scheduler.execute(
+				BackgroundScheduler.PRIORITY_PREVIEW, this, () -> {
 			IconPack.Pack pack = PieLauncherApp.iconPack.packs.get(
 					packageName);
 			if (pack != null) {
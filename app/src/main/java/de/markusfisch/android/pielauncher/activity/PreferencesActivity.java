@@ -17,12 +17,12 @@ import android.widget.TextView;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
 
 import de.markusfisch.android.pielauncher.R;
 import de.markusfisch.android.pielauncher.app.PieLauncherApp;
 import de.markusfisch.android.pielauncher.graphics.BackgroundBlur;
 import de.markusfisch.android.pielauncher.graphics.ToolbarBackground;
+import de.markusfisch.android.pielauncher.os.BackgroundScheduler;
 import de.markusfisch.android.pielauncher.os.BatteryOptimization;
 import de.markusfisch.android.pielauncher.os.DefaultLauncher;
 import de.markusfisch.android.pielauncher.preference.Preferences;
@@ -108,6 +108,12 @@ public class PreferencesActivity extends Activity {
 		SystemBars.setTransparentSystemBars(window);
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		PieLauncherApp.scheduler.cancel(this);
+	}
+
 	@Override
 	protected void onResume() {
 		super.onResume();
@@ -205,6 +211,11 @@ public class PreferencesActivity extends Activity {
 				PreferencesActivity::getSearchParameterOptions,
 				() -> prefs.getSearchParameter(),
 				(value) -> prefs.setSearchParameter(value));
+		initPreference(R.id.list_order,
+				R.string.list_order,
+				PreferencesActivity::getListOrderOptions,
+				() -> prefs.getListOrder(),
+				(value) -> prefs.setListOrder(value));
 		initPreference(R.id.show_app_names,
 				R.string.show_app_names,
 				PreferencesActivity::getShowAppNamesOptions,
@@ -274,7 +285,8 @@ public class PreferencesActivity extends Activity {
 			SetListener<T> setter,
 			Initializer initializer) {
 		if (initializer != null) {
-			Executors.newSingleThreadExecutor().execute(() -> {
+			PieLauncherApp.scheduler.execute(
+					BackgroundScheduler.PRIORITY_PREVIEW, this, () -> {
 				initializer.onInit();
 				handler.post(() -> initPreference(
 						tv, titleId, options, getter, setter, null));
@@ -479,6 +491,12 @@ public class PreferencesActivity extends Activity {
 				R.string.search_strictness_contains);
 		map.put(Preferences.SEARCH_STRICTNESS_STARTS_WITH,
 				R.string.search_strictness_starts_with);
+		map.put(Preferences.SEARCH_STRICTNESS_FUZZY,
+				R.string.search_strictness_fuzzy);
+		map.put(Preferences.SEARCH_STRICTNESS_INITIALS,
+				R.string.search_strictness_initials);
+		map.put(Preferences.SEARCH_STRICTNESS_T9,
+				R.string.search_strictness_t9);
 		return map;
 	}
 
@@ -488,6 +506,17 @@ public class PreferencesActivity extends Activity {
 				R.string.search_parameter_app_label);
 		map.put(Preferences.SEARCH_PARAMETER_PACKAGE_NAME,
 				R.string.search_parameter_package_name);
+		map.put(Preferences.SEARCH_PARAMETER_BOTH,
+				R.string.search_parameter_both);
+		return map;
+	}
+
+	private static Map<Integer, Integer> getListOrderOptions() {
+		Map<Integer, Integer> map = new LinkedHashMap<>();
+		map.put(Preferences.LIST_ORDER_NAME,
+				R.string.list_order_name);
+		map.put(Preferences.LIST_ORDER_USAGE,
+				R.string.list_order_usage);
 		return map;
 	}
 
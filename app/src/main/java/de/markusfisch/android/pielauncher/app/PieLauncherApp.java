@@ -11,12 +11,15 @@ import android.os.UserHandle;
 
 import de.markusfisch.android.pielauncher.content.AppMenu;
 import de.markusfisch.android.pielauncher.graphics.IconPack;
+import de.markusfisch.android.pielauncher.os.BackgroundScheduler;
 import de.markusfisch.android.pielauncher.preference.Preferences;
 import de.markusfisch.android.pielauncher.receiver.ConfigurationChangedReceiver;
 import de.markusfisch.android.pielauncher.receiver.ManagedProfileEventReceiver;
 import de.markusfisch.android.pielauncher.receiver.PackageEventReceiver;
 
 public class PieLauncherApp extends Application {
+	public static final BackgroundScheduler scheduler =
+			new BackgroundScheduler();
 	public static final AppMenu appMenu = new AppMenu();
 	public static final IconPack iconPack = new IconPack();
 
@@ -55,6 +58,18 @@ public class PieLauncherApp extends Application {
 		// need to be there as long as this application is running.
 	}
 
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		appMenu.trimMemory(level);
+	}
+
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		appMenu.trimMemory(TRIM_MEMORY_COMPLETE);
+	}
+
 	private void registerConfigurationChangedReceiver() {
 		configurationChangedReceiver.initialize(this);
 		IntentFilter filter = new IntentFilter();
@@ -0,0 +1,146 @@
+package de.markusfisch.android.pielauncher.content;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+
+import de.markusfisch.android.pielauncher.app.PieLauncherApp;
+import de.markusfisch.android.pielauncher.graphics.Converter;
+import de.markusfisch.android.pielauncher.io.AppIndexCache;
+import de.markusfisch.android.pielauncher.os.BackgroundScheduler;
+
+// Rasterizes app icons when they're needed. Must only be used from
+// the main thread, except for loadBitmap().
+class AppIconLoader {
+	interface Callback {
+		void onBitmapLoaded(AppMenu.AppIcon appIcon, Bitmap bitmap);
+	}
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	// The size of the most recent request for every icon that is
+	// being loaded.
+	private final HashMap<AppMenu.AppIcon, Integer> pending =
+			new HashMap<>();
+
+	private final Callback callback;
+
+	AppIconLoader(Callback callback) {
+		this.callback = callback;
+	}
+
+	void request(Context context, AppMenu.AppIcon appIcon, int size) {
+		if (appIcon.loadFailed) {
+			return;
+		}
+		Integer pendingSize = pending.get(appIcon);
+		if (pendingSize != null && pendingSize == size) {
+			return;
+		}
+		// A load for another size may still be running, its result
+		// is dropped when it comes in.
+		pending.put(appIcon, size);
+		PieLauncherApp.scheduler.execute(
+				BackgroundScheduler.PRIORITY_ICON, () -> {
+					Bitmap bitmap = null;
+					try {
+						bitmap = loadBitmap(context, appIcon, size);
+					} finally {
+						// Always post so a failed load doesn't keep the
+						// icon pending forever.
+						Bitmap loaded = bitmap;
+						handler.post(() -> {
+							Integer latestSize = pending.get(appIcon);
+							if (latestSize == null || latestSize != size) {
+								// Superseded by a request for another size.
+								return;
+							}
+							pending.remove(appIcon);
+							if (loaded == null) {
+								// Don't try again for this icon.
+								appIcon.loadFailed = true;
+								return;
+							}
+							callback.onBitmapLoaded(appIcon, loaded);
+						});
+					}
+				});
+	}
+
+	// May be called from any thread.
+	static Bitmap loadBitmap(Context context, AppMenu.AppIcon appIcon,
+			int size) {
+		Bitmap bitmap = AppIndexCache.restoreIcon(context, appIcon, size);
+		if (bitmap != null) {
+			return bitmap;
+		}
+		int epoch = AppIndexCache.getEpoch();
+		Drawable icon = getIcon(context, appIcon);
+		if (icon == null) {
+			return null;
+		}
+		bitmap = Converter.getBitmapFromDrawable(icon, size);
+		AppIndexCache.storeIcon(context, appIcon, size, bitmap, epoch);
+		return bitmap;
+	}
+
+	private static Drawable getIcon(Context context,
+			AppMenu.AppIcon appIcon) {
+		Drawable icon = PieLauncherApp.iconPack.getIcon(
+				appIcon.componentName.getPackageName());
+		if (icon != null) {
+			return icon;
+		}
+		if (AppMenu.HAS_LAUNCHER_APP) {
+			return getProfileIcon(context, appIcon);
+		}
+		try {
+			return context.getPackageManager().getActivityIcon(
+					appIcon.componentName);
+		} catch (PackageManager.NameNotFoundException e) {
+			return null;
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+	private static Drawable getProfileIcon(Context context,
+			AppMenu.AppIcon appIcon) {
+		LauncherApps la = (LauncherApps) context.getSystemService(
+				Context.LAUNCHER_APPS_SERVICE);
+		Intent intent = new Intent(Intent.ACTION_MAIN);
+		intent.addCategory(Intent.CATEGORY_LAUNCHER);
+		intent.setComponent(appIcon.componentName);
+		try {
+			LauncherActivityInfo info = la.resolveActivity(intent,
+					appIcon.userHandle);
+			return info != null ? getBadgedIcon(info) : null;
+		} catch (Exception e) {
+			// Activity may be gone or the profile may be locked.
+			return null;
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+	private static Drawable getBadgedIcon(LauncherActivityInfo info) {
+		// According to Vitals, `getBadgedIcon()` can throw a NPE
+		// for some unknown reason. Let's try `getIcon()` then.
+		try {
+			return info.getBadgedIcon(0);
+		} catch (Exception e) {
+			try {
+				return info.getIcon(0);
+			} catch (Exception e2) {
+				return null;
+			}
+		}
+	}
+}
@@ -2,6 +2,8 @@ package de.markusfisch.android.pielauncher.content;
 
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
@@ -10,54 +12,72 @@ import android.content.pm.LauncherActivityInfo;
 import android.content.pm.LauncherApps;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.graphics.Rect;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Process;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.CalendarContract;
 import android.provider.MediaStore;
 import android.provider.Settings;
+import android.util.Log;
 
+import java.io.File;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import de.markusfisch.android.pielauncher.R;
 import de.markusfisch.android.pielauncher.app.PieLauncherApp;
 import de.markusfisch.android.pielauncher.graphics.CanvasPieMenu;
 import de.markusfisch.android.pielauncher.graphics.Converter;
+import de.markusfisch.android.pielauncher.graphics.IconAtlas;
+import de.markusfisch.android.pielauncher.io.AppIndexCache;
 import de.markusfisch.android.pielauncher.io.HiddenApps;
+import de.markusfisch.android.pielauncher.io.LaunchHistory;
 import de.markusfisch.android.pielauncher.io.Menu;
+import de.markusfisch.android.pielauncher.os.BackgroundScheduler;
 import de.markusfisch.android.pielauncher.preference.Preferences;
+import de.markusfisch.android.pielauncher.receiver.ConfigurationChangedReceiver;
 
 public class AppMenu extends CanvasPieMenu {
     public static class AppIcon extends CanvasPieMenu.CanvasIcon {
-        public final Rect hitRect = new Rect();
         public final ComponentName componentName;
         public final String label;
         public final UserHandle userHandle;
+        public final long lastUpdateTime;
 
         AppIcon(ComponentName componentName, String label, Drawable icon,
                 UserHandle userHandle) {
-            super(Converter.getBitmapFromDrawable(icon));
+            this(componentName, label, Converter.getBitmapFromDrawable(icon),
+                    userHandle, 0L);
+        }
+
+        AppIcon(ComponentName componentName, String label, Bitmap bitmap,
+                UserHandle userHandle, long lastUpdateTime) {
+            super(bitmap);
             this.componentName = componentName;
             this.label = label;
             this.userHandle = userHandle;
+            this.lastUpdateTime = lastUpdateTime;
         }
+
+        // Only accessed from the main thread.
+        boolean loadFailed;
     }
 
     public static class CustomAppIcon extends AppIcon {
@@ -82,35 +102,158 @@ public class AppMenu extends CanvasPieMenu {
     }
 
 
+    private static class PendingApp {
+        private final ComponentName componentName;
+        private final UserHandle userHandle;
+        private final long lastUpdateTime;
+        private final ResolveInfo resolveInfo;
+        private final LauncherActivityInfo launcherActivityInfo;
+
+        // Written by a worker thread, read after runParallel() returns.
+        private AppIcon appIcon;
+
+        private PendingApp(ComponentName componentName,
+                           UserHandle userHandle,
+                           long lastUpdateTime,
+                           ResolveInfo resolveInfo,
+                           LauncherActivityInfo launcherActivityInfo) {
+            this.componentName = componentName;
+            this.userHandle = userHandle;
+            this.lastUpdateTime = lastUpdateTime;
+            this.resolveInfo = resolveInfo;
+            this.launcherActivityInfo = launcherActivityInfo;
+        }
+
+        private void createAppIcon(PackageManager pm) {
+            String label = launcherActivityInfo != null
+                    ? getLabel(launcherActivityInfo)
+                    : resolveInfo.loadLabel(pm).toString();
+            // The icon is rasterized by AppIconLoader when it's needed.
+            appIcon = new AppIcon(componentName, label, (Bitmap) null,
+                    userHandle, lastUpdateTime);
+        }
+
+        @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+        private static String getLabel(LauncherActivityInfo info) {
+            return info.getLabel().toString();
+        }
+    }
+
+    public interface IconListener {
+        void onIconLoaded();
+    }
+
     public interface UpdateListener {
-        void onUpdate();
+        // progressive is true for partial results and for the update
+        // that completes them, so listeners can keep the search query.
+        void onUpdate(boolean progressive);
+    }
+
+    public interface SearchListener {
+        // apps is null while there are no apps yet.
+        void onSearched(List<AppIcon> apps);
+    }
+
+    private interface PartialListener {
+        void onPartial(Map<LauncherItemKey, AppIcon> partialApps);
+    }
+
+    private static class PartialPublisher {
+        private static final int BATCH_SIZE = 32;
+        private static final long BATCH_MILLIS = 100L;
+
+        private final HashMap<LauncherItemKey, AppIcon> partialApps;
+        private final PartialListener listener;
+
+        private int pending = 0;
+        private long lastPublish = SystemClock.elapsedRealtime();
+        private boolean publishing = false;
+
+        private PartialPublisher(Map<LauncherItemKey, AppIcon> allApps,
+                                 PartialListener listener) {
+            this.partialApps = new HashMap<>(allApps);
+            this.listener = listener;
+        }
+
+        // Called from all threads that load labels.
+        private void add(PendingApp pendingApp) {
+            if (pendingApp.appIcon == null) {
+                return;
+            }
+            Map<LauncherItemKey, AppIcon> snapshot;
+            synchronized (this) {
+                partialApps.put(new LauncherItemKey(pendingApp.componentName,
+                        pendingApp.userHandle), pendingApp.appIcon);
+                ++pending;
+                long now = SystemClock.elapsedRealtime();
+                // Only one thread publishes at a time, everything that
+                // comes in meanwhile goes into the next batch.
+                if (publishing || (pending < BATCH_SIZE &&
+                        now - lastPublish < BATCH_MILLIS)) {
+                    return;
+                }
+                snapshot = new HashMap<>(partialApps);
+                pending = 0;
+                lastPublish = now;
+                publishing = true;
+            }
+            // Building the menu and the search index takes a while,
+            // so do it without blocking the other threads.
+            try {
+                listener.onPartial(snapshot);
+            } finally {
+                synchronized (this) {
+                    publishing = false;
+                    // Don't count the time spent publishing.
+                    lastPublish = SystemClock.elapsedRealtime();
+                }
+            }
+        }
     }
 
     public static final boolean HAS_LAUNCHER_APP =
             Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
 
+    private static final String TAG = "AppMenu";
+    // Below this, searching is quicker than handing it to a worker.
+    private static final int ASYNC_SEARCH_MIN_APPS = 256;
+
     public final HiddenApps hiddenApps = new HiddenApps();
+    public final LaunchHistory launchHistory = new LaunchHistory();
 
     private final Handler handler = new Handler(Looper.getMainLooper());
     private final HashMap<LauncherItemKey, AppIcon> apps = new HashMap<>();
-    private final Comparator<AppIcon> appLabelComparator = (left, right) -> {
-        // Fast enough to do it for every comparison.
-        // Otherwise, if defaultLocale was a permanent field outside
-        // this scope, we'd need to listen for configuration changes
-        // because the locale may change.
-        Locale defaultLocale = Locale.getDefault();
-        // compareToIgnoreCase() does not take locale into account.
-        int result = left.label.toLowerCase(defaultLocale).compareTo(
-                right.label.toLowerCase(defaultLocale));
-        return result == 0 && left.userHandle != null && right.userHandle != null
-                ? left.userHandle.hashCode() - right.userHandle.hashCode()
-                : result;
-    };
-
+    private final IndexQueue indexQueue = new IndexQueue();
+    private final IconAtlas listAtlas = new IconAtlas();
+    private final Object searchTag = new Object();
+    private final AtomicReference<Runnable> pendingPartial =
+            new AtomicReference<>();
+    // Result lists are shared, so they must not be modified.
+    private final SearchCache searchCache = new SearchCache();
+    private final AppIconLoader iconLoader =
+            new AppIconLoader(this::setLoadedBitmap);
     private UpdateListener updateListener;
+    private IconListener iconListener;
     private LauncherApps launcherApps;
     private String drawerPackageName;
-    private boolean indexing = false;
+    private String indexSignature;
+    // Signature of the rasterized icons, see getIconSignature().
+    private String iconSignature;
+    private SearchIndex searchIndex;
+    // Changes whenever apps changes, so results of workers can tell
+    // if they're still up to date.
+    private int appsVersion = 0;
+    // Previous result to narrow down when the query gets longer.
+    private SearchIndex.Matches lastMatches;
+    private int searchGeneration = 0;
+    private boolean showingPartial = false;
+    // True if apps changed since AppIndexCache was written.
+    private boolean snapshotChanged = false;
+    private Context appContext;
+    private volatile int eagerIconCount = 0;
+    private volatile int pieIconSize = 0;
+    private volatile int listIconSize = 0;
+    private int listIconBudget = 0;
 
     public static void launchPackage(Context context, String packageName) {
         PackageManager pm = context.getPackageManager();
@@ -139,6 +282,8 @@ public class AppMenu extends CanvasPieMenu {
     }
 
     public void launchApp(Context context, AppIcon icon) {
+        launchHistory.addLaunch(context, icon.componentName,
+                icon.userHandle);
         if (HAS_LAUNCHER_APP) {
             try {
                 LauncherApps lm = getLauncherApps(context);
@@ -181,163 +326,794 @@ public class AppMenu extends CanvasPieMenu {
         updateListener = listener;
     }
 
+    public void setIconListener(IconListener listener) {
+        iconListener = listener;
+    }
+
+    // List icons are loaded again from the icon files when they're
+    // drawn next, pie icons are always kept.
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            storeSnapshot();
+            // The process is on the list of processes to kill, so
+            // drop all list icons.
+            trimListIcons(0);
+            searchCache.clear();
+            for (AppIcon appIcon : apps.values()) {
+                if (!icons.contains(appIcon)) {
+                    appIcon.setBitmap(null);
+                }
+            }
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            storeSnapshot();
+            // Just hidden, so keep the icons for when the user comes
+            // back, which is very likely for a launcher.
+            searchCache.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            // Keep what's on screen right now.
+            trimListIcons(eagerIconCount * listAtlas.getSlotByteCount());
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimListIcons(getListIconBudget() / 2);
+        }
+    }
+
+    // Icons are rasterized at the size they're displayed at:
+    // pieIconSize is the largest size an icon can have in the pie,
+    // icons that are only in the list are rasterized at listIconSize.
+    public void setIconSizes(int listIconSize, int pieIconSize) {
+        this.listIconSize = listIconSize;
+        if (listAtlas.setSlotSize(listIconSize)) {
+            for (AppIcon appIcon : apps.values()) {
+                appIcon.setSlot(null);
+            }
+        }
+        if (this.pieIconSize != pieIconSize) {
+            this.pieIconSize = pieIconSize;
+            // Rasterize pie icons again but keep showing the old
+            // bitmaps until the new ones are there.
+            for (Icon icon : icons) {
+                AppIcon appIcon = (AppIcon) icon;
+                if (appContext != null && isIndexedApp(appIcon)) {
+                    iconLoader.request(appContext, appIcon, pieIconSize);
+                }
+            }
+        }
+    }
+
+    // Number of list icons that should be rasterized while indexing
+    // because they will be visible right away.
+    public void setEagerIconCount(int count) {
+        eagerIconCount = count;
+    }
+
+    // Called when an icon has no bitmap for the pie or no slot in the
+    // atlas for the list.
+    @Override
+    public void requestBitmap(CanvasPieMenu.CanvasIcon icon) {
+        if (!(icon instanceof AppIcon)) {
+            return;
+        }
+        AppIcon appIcon = (AppIcon) icon;
+        Bitmap bitmap = appIcon.getBitmap();
+        if (bitmap != null) {
+            // Was rasterized while indexing and just needs a slot.
+            setLoadedBitmap(appIcon, bitmap);
+        } else if (appContext != null) {
+            iconLoader.request(appContext, appIcon, icons.contains(appIcon)
+                    ? pieIconSize
+                    : listIconSize);
+        }
+    }
+
     public void store(Context context) {
         Menu.store(context, icons);
         hiddenApps.store(context);
     }
 
     public List<AppIcon> filterAppsBy(Context context, String query) {
-        if (indexing) {
+        if (isIndexing()) {
             return null;
         }
         Locale defaultLocale = Locale.getDefault();
-        query = query == null
-                ? ""
-                : query.trim().toLowerCase(defaultLocale);
-
         Preferences prefs = PieLauncherApp.getPrefs(context);
+        String normalizedQuery = normalizeQuery(query, defaultLocale);
         int strategy = prefs.getSearchStrictness();
-        ArrayList<AppIcon> list = new ArrayList<>();
-        ArrayList<AppIcon> hamming = new ArrayList<>();
-        if (query.isEmpty()) {
-            list.addAll(apps.values());
-        } else {
-            int item = prefs.getSearchParameter();
-            for (Map.Entry<LauncherItemKey, AppIcon> entry : apps.entrySet()) {
-                AppIcon appIcon = entry.getValue();
-                String subject = getSubject(item, appIcon, defaultLocale);
-                boolean add = false;
-                switch (strategy) {
-                    // HAMMING includes CONTAINS for historical reasons.
-                    case Preferences.SEARCH_STRICTNESS_HAMMING:
-                    case Preferences.SEARCH_STRICTNESS_CONTAINS:
-                        add = subject.contains(query);
-                        break;
-                    case Preferences.SEARCH_STRICTNESS_STARTS_WITH:
-                        add = subject.startsWith(query);
-                        break;
-                }
-                if (add) {
-                    list.add(appIcon);
-                } else if (strategy == Preferences.SEARCH_STRICTNESS_HAMMING &&
-                        hammingDistance(subject, query) < 2) {
-                    hamming.add(appIcon);
-                }
-            }
+        int parameter = prefs.getSearchParameter();
+        LaunchHistory history = getRanking(prefs, normalizedQuery);
+        SearchIndex index = getSearchIndex(defaultLocale);
+        int historyGeneration = launchHistory.getGeneration();
+        String key = SearchCache.getKey(normalizedQuery, strategy,
+                parameter, history != null);
+        SearchIndex.Matches matches = searchCache.get(index,
+                historyGeneration, key);
+        if (matches == null) {
+            matches = index.filter(normalizedQuery, strategy, parameter,
+                    history, lastMatches);
+            searchCache.put(index, historyGeneration, key, matches);
         }
+        lastMatches = matches;
+        return matches.apps;
+    }
 
-        Collections.sort(list, appLabelComparator);
-        if (!hamming.isEmpty()) {
-            // Only append hamming matches as they're less likely
-            // as good as exact matches.
-            Collections.sort(hamming, appLabelComparator);
-            list.addAll(hamming);
+    // Searches on a worker if there are many apps. Only the result of
+    // the latest query is delivered, superseded queries are dropped.
+    public void filterAppsByAsync(Context context, String query,
+                                  SearchListener listener) {
+        int generation = ++searchGeneration;
+        PieLauncherApp.scheduler.cancel(searchTag);
+        if (isIndexing() || apps.size() < ASYNC_SEARCH_MIN_APPS) {
+            listener.onSearched(filterAppsBy(context, query));
+            return;
+        }
+        Locale defaultLocale = Locale.getDefault();
+        Preferences prefs = PieLauncherApp.getPrefs(context);
+        String normalizedQuery = normalizeQuery(query, defaultLocale);
+        int strategy = prefs.getSearchStrictness();
+        int parameter = prefs.getSearchParameter();
+        LaunchHistory history = getRanking(prefs, normalizedQuery);
+        int historyGeneration = launchHistory.getGeneration();
+        String key = SearchCache.getKey(normalizedQuery, strategy,
+                parameter, history != null);
+        SearchIndex current = searchIndex;
+        boolean hasIndex = current != null &&
+                current.locale.equals(defaultLocale);
+        if (hasIndex) {
+            SearchIndex.Matches cached = searchCache.get(current,
+                    historyGeneration, key);
+            if (cached != null) {
+                lastMatches = cached;
+                listener.onSearched(cached.apps);
+                return;
+            }
         }
-        return list;
+        // If there's no index for this locale, build it on the worker
+        // too, that's even more work than searching.
+        List<AppIcon> snapshot = hasIndex
+                ? null
+                : new ArrayList<>(apps.values());
+        int version = appsVersion;
+        SearchIndex.Matches previous = lastMatches;
+        PieLauncherApp.scheduler.execute(
+                BackgroundScheduler.PRIORITY_SEARCH, searchTag, () -> {
+            SearchIndex index = hasIndex
+                    ? current
+                    : new SearchIndex(snapshot, defaultLocale);
+            SearchIndex.Matches matches = index.filter(normalizedQuery,
+                    strategy, parameter, history, previous);
+            handler.post(() -> {
+                if (!hasIndex && appsVersion == version) {
+                    searchIndex = index;
+                }
+                // Still a valid result, even if it's not needed now.
+                searchCache.put(index, historyGeneration, key, matches);
+                if (generation != searchGeneration) {
+                    return;
+                }
+                lastMatches = matches;
+                listener.onSearched(matches.apps);
+            });
+        });
     }
 
     public void removePackage(Context context, String packageName,
                               UserHandle userHandle) {
-        removePackageFromApps(apps, packageName, userHandle);
+        releaseSlots(packageName, userHandle);
+        List<AppIcon> removed = removePackageFromApps(apps, packageName,
+                userHandle);
         removePackageFromPieMenu(packageName, userHandle);
+        ++appsVersion;
+        if (searchIndex != null) {
+            // Nothing needs to be collated to just drop apps, so this
+            // is done right here and the next query can't find them.
+            searchIndex = searchIndex.update(removed,
+                    Collections.emptyList());
+        }
+        snapshotChanged = true;
         hiddenApps.removeAndStore(context, packageName);
         if (updateListener != null) {
-            updateListener.onUpdate();
+            updateListener.onUpdate(false);
         }
     }
 
     public void updateIconsAsync(Context context) {
-        if (!indexAppsAsync(context)) {
-            handler.postDelayed(() -> updateIconsAsync(context), 1000L);
-        }
+        // Re-create all icons because something changed that isn't
+        // reflected in the packages' update times.
+        indexQueue.addFull(false);
+        runIndexQueue(context);
     }
 
     public boolean isEmpty() {
         return apps.isEmpty();
     }
 
+    // Collation and folding depend on the locale. Rebuilds just the
+    // search index so searching doesn't have to do it on the main
+    // thread when the next query comes in.
+    public void updateSearchIndexAsync() {
+        SearchIndex current = searchIndex;
+        if (current == null || current.locale.equals(Locale.getDefault())) {
+            return;
+        }
+        rebuildSearchIndexAsync();
+    }
+
     public boolean isIndexing() {
-        return apps.isEmpty() && indexing;
+        return apps.isEmpty() && indexQueue.isBusy();
     }
 
-    public boolean indexAppsAsync(Context context) {
-        return indexAppsAsync(context, null, null);
+    public void indexAppsAsync(Context context) {
+        indexAppsAsync(context, null, null);
     }
 
-    public boolean indexAppsAsync(Context context,
-                                  String packageNameRestriction,
-                                  UserHandle userHandleRestriction) {
-        if (indexing) {
-            return false;
+    public void indexAppsAsync(Context context,
+                               String packageNameRestriction,
+                               UserHandle userHandleRestriction) {
+        if (packageNameRestriction == null) {
+            indexQueue.addFull(true);
+        } else {
+            indexQueue.addPackage(packageNameRestriction,
+                    userHandleRestriction);
         }
-        indexing = true;
+        runIndexQueue(context);
+    }
+
+    private void runIndexQueue(Context context) {
+        IndexQueue.Request request = indexQueue.poll();
+        if (request == null) {
+            // Either there's nothing to do or a pass is running and
+            // will pick up the pending requests when it's done.
+            return;
+        }
+        appContext = context.getApplicationContext();
         hiddenApps.restore(context);
         HashSet<String> hideApps = new HashSet<>(hiddenApps.packageNames);
+        String signature = getIndexSignature(context);
+        if (request.isFull()) {
+            indexAllApps(context, hideApps, signature,
+                    getIconSignature(context), request.reuseIcons);
+        } else {
+            indexPackages(context, hideApps, signature, request.packages);
+        }
+    }
+
+    private void indexAllApps(Context context,
+                              HashSet<String> hideApps,
+                              String signature,
+                              String iconSignature,
+                              boolean reuseIcons) {
         Map<LauncherItemKey, AppIcon> newApps = new HashMap<>();
-        if (packageNameRestriction != null) {
-            // Copy apps since we're indexing just one app.
-            newApps.putAll(apps);
-            removePackageFromApps(newApps, packageNameRestriction,
-                    userHandleRestriction);
-            // No need to call removePackageFromPieMenu() because the
-            // menu will be re-created by createMenu() after indexing.
-        }
-        Executors.newSingleThreadExecutor().execute(() -> {
-            indexApps(context,
-                    packageNameRestriction,
-                    userHandleRestriction,
-                    hideApps,
-                    newApps);
-            List<Icon> newIcons = createMenu(context, newApps,
-                    PieLauncherApp.getPrefs(context).openListWith() ==
-                            Preferences.OPEN_LIST_WITH_ICON);
-            handler.post(() -> {
-                apps.clear();
-                apps.putAll(newApps);
-                icons.clear();
-                icons.addAll(newIcons);
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    icons.add(new
-                            CustomAppIcon(context.getDrawable(R.drawable.ic_notification)));
+        Map<LauncherItemKey, AppIcon> reusableApps = new HashMap<>();
+        boolean useDrawerIcon = PieLauncherApp.getPrefs(context)
+                .openListWith() == Preferences.OPEN_LIST_WITH_ICON;
+        boolean restoreSnapshot = false;
+        if (reuseIcons) {
+            if (apps.isEmpty()) {
+                restoreSnapshot = true;
+            } else if (signature.equals(indexSignature)) {
+                reusableApps.putAll(apps);
+            }
+        }
+        boolean restore = restoreSnapshot;
+        boolean empty = apps.isEmpty();
+        // Rasterized icons are invalid if the icons are re-created or
+        // the configuration changed. A new locale just changes labels.
+        // If there are no apps yet, restoreSnapshot() takes care of
+        // this.
+        boolean clearIcons = !reuseIcons ||
+                (!empty && !iconSignature.equals(this.iconSignature));
+        this.iconSignature = iconSignature;
+        PieLauncherApp.scheduler.execute(
+                BackgroundScheduler.PRIORITY_INDEX, () -> {
+            try {
+                if (clearIcons) {
+                    AppIndexCache.clearIcons(context);
+                }
+                launchHistory.restore(context);
+                if (restore) {
+                    // Do this before anything else so the user doesn't
+                    // have to wait for the binder calls below.
+                    restoreSnapshot(context, signature, iconSignature,
+                            reusableApps);
+                    if (!reusableApps.isEmpty()) {
+                        publishPartial(context, new HashMap<>(reusableApps),
+                                useDrawerIcon, signature);
+                    }
+                }
+                // Only stream apps in when there's nothing to show yet.
+                // Otherwise the list would shrink and grow again.
+                PartialListener partialListener = empty &&
+                        reusableApps.isEmpty()
+                        ? (partialApps) -> publishPartial(context,
+                                partialApps, useDrawerIcon, signature)
+                        : null;
+                indexApps(context, null, hideApps, reusableApps, newApps,
+                        partialListener);
+                List<Icon> newIcons = createMenu(context, newApps,
+                        useDrawerIcon, true);
+                SearchIndex newIndex = new SearchIndex(newApps.values(),
+                        Locale.getDefault());
+                Map<AppIcon, Bitmap> eagerBitmaps = loadEagerBitmaps(context,
+                        newIcons, newIndex);
+                handler.post(() -> {
+                    setApps(context, newApps, newIcons, newIndex, signature,
+                            showingPartial);
+                    showingPartial = false;
+                    // Moves list icons into the atlas right away so
+                    // their full size bitmaps aren't kept.
+                    for (Map.Entry<AppIcon, Bitmap> entry :
+                            eagerBitmaps.entrySet()) {
+                        setLoadedBitmap(entry.getKey(), entry.getValue());
+                    }
+                });
+                AppIndexCache.store(context, signature, iconSignature,
+                        newApps.values(), pieIconSize, listIconSize);
+            } finally {
+                // Also if the pass failed, or no pass would ever run
+                // again.
+                handler.post(() -> finishPass(context));
+            }
+        });
+    }
+
+    private void indexPackages(Context context,
+                               HashSet<String> hideApps,
+                               String signature,
+                               List<IndexQueue.PackageRequest> packages) {
+        SearchIndex current = searchIndex;
+        ArrayList<AppIcon> removedApps = new ArrayList<>();
+        for (AppIcon appIcon : apps.values()) {
+            if (isInPackages(appIcon, packages)) {
+                removedApps.add(appIcon);
+            }
+        }
+        int version = appsVersion;
+        PieLauncherApp.scheduler.execute(
+                BackgroundScheduler.PRIORITY_INDEX, () -> {
+            try {
+                // Only index the changed packages, there's no need to
+                // look at any other app.
+                Map<LauncherItemKey, AppIcon> changedApps = new HashMap<>();
+                indexApps(context, packages, hideApps,
+                        Collections.emptyMap(), changedApps, null);
+                // Derive the index for the result here so the main
+                // thread doesn't have to. Only the changed apps need
+                // to be collated.
+                SearchIndex nextIndex = current != null
+                        ? current.update(removedApps, changedApps.values())
+                        : null;
+                handler.post(() -> {
+                    boolean unchanged = appsVersion == version;
+                    List<AppIcon> removed = applyChanges(packages,
+                            changedApps);
+                    if (unchanged) {
+                        searchIndex = nextIndex;
+                    } else if (searchIndex != null) {
+                        // Apps were removed in the meantime.
+                        searchIndex = searchIndex.update(removed,
+                                changedApps.values());
+                    }
+                    if (updateListener != null) {
+                        updateListener.onUpdate(false);
+                    }
+                    // Written when the launcher is hidden, so a series
+                    // of package updates doesn't rewrite it every time.
+                    snapshotChanged = true;
+                });
+            } finally {
+                handler.post(() -> finishPass(context));
+            }
+        });
+    }
+
+    // Must be called on the indexing thread. Returns the loaded
+    // bitmaps that need to go through setLoadedBitmap().
+    private Map<AppIcon, Bitmap> loadEagerBitmaps(Context context,
+                                                  List<Icon> menuIcons,
+                                                  SearchIndex index) {
+        ArrayList<AppIcon> eagerIcons = new ArrayList<>();
+        for (Icon icon : menuIcons) {
+            AppIcon appIcon = (AppIcon) icon;
+            if (appIcon.getBitmap() == null) {
+                eagerIcons.add(appIcon);
+            }
+        }
+        // Icons that are only in the list are rasterized at the size
+        // of the list.
+        int menuCount = eagerIcons.size();
+        int count = eagerIconCount;
+        if (count > 0) {
+            // The first rows of the unfiltered list.
+            for (int i = 0, size = Math.min(count, index.size());
+                    i < size; ++i) {
+                AppIcon appIcon = index.get(i);
+                // Reused apps may already have a slot in the atlas.
+                if (appIcon.getBitmap() == null &&
+                        appIcon.getSlot() == null &&
+                        !eagerIcons.contains(appIcon)) {
+                    eagerIcons.add(appIcon);
                 }
-                indexing = false;
-                if (updateListener != null) {
-                    updateListener.onUpdate();
+            }
+        }
+        int pieSize = pieIconSize;
+        int listSize = listIconSize;
+        Bitmap[] bitmaps = new Bitmap[eagerIcons.size()];
+        PieLauncherApp.scheduler.runParallel(
+                BackgroundScheduler.PRIORITY_INDEX,
+                bitmaps.length,
+                (i) -> bitmaps[i] = AppIconLoader.loadBitmap(context,
+                        eagerIcons.get(i), i < menuCount
+                                ? pieSize
+                                : listSize));
+        HashMap<AppIcon, Bitmap> loaded = new HashMap<>();
+        for (int i = 0; i < bitmaps.length; ++i) {
+            if (bitmaps[i] != null) {
+                loaded.put(eagerIcons.get(i), bitmaps[i]);
+            }
+        }
+        return loaded;
+    }
+
+    // Returns the apps that were removed.
+    private List<AppIcon> applyChanges(
+            List<IndexQueue.PackageRequest> packages,
+            Map<LauncherItemKey, AppIcon> changedApps) {
+        ArrayList<AppIcon> removed = new ArrayList<>();
+        for (IndexQueue.PackageRequest pr : packages) {
+            releaseSlots(pr.packageName, pr.userHandle);
+            removed.addAll(removePackageFromApps(apps, pr.packageName,
+                    pr.userHandle));
+        }
+        apps.putAll(changedApps);
+        ++appsVersion;
+        // Patch the pie menu in place so icons keep their position.
+        ListIterator<Icon> it = icons.listIterator();
+        while (it.hasNext()) {
+            AppIcon appIcon = (AppIcon) it.next();
+            if (isDrawerIcon(appIcon) || !isInPackages(appIcon, packages)) {
+                continue;
+            }
+            AppIcon changedIcon = changedApps.get(new LauncherItemKey(
+                    appIcon.componentName, appIcon.userHandle));
+            if (changedIcon == null) {
+                it.remove();
+            } else {
+                it.set(changedIcon);
+            }
+        }
+        return removed;
+    }
+
+    private void setLoadedBitmap(AppIcon appIcon, Bitmap bitmap) {
+        boolean inPie = icons.contains(appIcon);
+        boolean inList = isIndexedApp(appIcon);
+        if (!inPie && !inList) {
+            // Icon was replaced or removed in the meantime.
+            return;
+        }
+        // Only apps in the list get a slot, otherwise nothing would
+        // ever release it.
+        if (inList && appIcon.getSlot() == null) {
+            appIcon.setSlot(listAtlas.add(bitmap));
+            int budget = getListIconBudget();
+            if (listAtlas.getByteCount() > budget) {
+                // Leave some room so this doesn't happen too often.
+                trimListIcons(budget * 3 / 4);
+            }
+        }
+        // Only the pie draws the full bitmap, the list draws the slot.
+        appIcon.setBitmap(inPie ? bitmap : null);
+        if (iconListener != null) {
+            iconListener.onIconLoaded();
+        }
+    }
+
+    private int getListIconBudget() {
+        if (listIconBudget == 0 && appContext != null) {
+            ActivityManager am = (ActivityManager)
+                    appContext.getSystemService(Context.ACTIVITY_SERVICE);
+            // An eighth of what this app may use, in bytes.
+            listIconBudget = am.getMemoryClass() * 1024 * 128;
+        }
+        return listIconBudget > 0 ? listIconBudget : Integer.MAX_VALUE;
+    }
+
+    // Keeps the most recently drawn list icons that fit into maxBytes.
+    private void trimListIcons(int maxBytes) {
+        ArrayList<AppIcon> slotted = new ArrayList<>();
+        for (AppIcon appIcon : apps.values()) {
+            if (appIcon.getSlot() != null) {
+                slotted.add(appIcon);
+            }
+        }
+        int keep = Math.min(slotted.size(),
+                maxBytes / Math.max(1, listAtlas.getSlotByteCount()));
+        if (keep < slotted.size()) {
+            Collections.sort(slotted, (left, right) -> {
+                long l = left.getSlot().getLastUse();
+                long r = right.getSlot().getLastUse();
+                return l > r ? -1 : (l == r ? 0 : 1);
+            });
+            for (int i = keep, size = slotted.size(); i < size; ++i) {
+                slotted.get(i).setSlot(null);
+            }
+            slotted.subList(keep, slotted.size()).clear();
+        }
+        // Always compact to free the memory of released slots too.
+        listAtlas.compact(slotted);
+    }
+
+    // False for the drawer icon and icons that were replaced or removed.
+    private boolean isIndexedApp(AppIcon appIcon) {
+        return apps.get(new LauncherItemKey(appIcon.componentName,
+                appIcon.userHandle)) == appIcon;
+    }
+
+    private void releaseSlots(String packageName, UserHandle userHandle) {
+        for (AppIcon appIcon : apps.values()) {
+            if (isInPackage(appIcon, packageName, userHandle)) {
+                releaseSlot(appIcon);
+            }
+        }
+    }
+
+    private void releaseSlot(AppIcon appIcon) {
+        IconAtlas.Slot slot = appIcon.getSlot();
+        if (slot != null) {
+            listAtlas.release(slot);
+            appIcon.setSlot(null);
+        }
+    }
+
+    private void finishPass(Context context) {
+        indexQueue.finish();
+        // Run whatever came in while indexing right away.
+        runIndexQueue(context);
+    }
+
+    // Must be called on the indexing thread.
+    private void publishPartial(Context context,
+                                Map<LauncherItemKey, AppIcon> partialApps,
+                                boolean useDrawerIcon,
+                                String signature) {
+        // Don't create the initial menu from an incomplete set of apps.
+        List<Icon> partialIcons = createMenu(context, partialApps,
+                useDrawerIcon, false);
+        SearchIndex partialIndex = new SearchIndex(partialApps.values(),
+                Locale.getDefault());
+        Runnable publish = () -> {
+            if (apps.isEmpty() || showingPartial) {
+                setApps(context, partialApps, partialIcons, partialIndex,
+                        signature, true);
+                showingPartial = true;
+            }
+        };
+        // If the main thread hasn't shown the last batch yet, just
+        // replace it with this one.
+        if (pendingPartial.getAndSet(publish) == null) {
+            handler.post(() -> pendingPartial.getAndSet(null).run());
+        }
+    }
+
+    private void setApps(Context context,
+                         Map<LauncherItemKey, AppIcon> newApps,
+                         List<Icon> newIcons,
+                         SearchIndex newIndex,
+                         String signature,
+                         boolean progressive) {
+        // Free the slots of all apps that are gone or were re-created.
+        HashSet<AppIcon> keep = new HashSet<>(newApps.values());
+        for (AppIcon appIcon : apps.values()) {
+            if (!keep.contains(appIcon)) {
+                releaseSlot(appIcon);
+            }
+        }
+        apps.clear();
+        apps.putAll(newApps);
+        icons.clear();
+        icons.addAll(newIcons);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            icons.add(new
+                    CustomAppIcon(context.getDrawable(R.drawable.ic_notification)));
+        }
+        searchIndex = newIndex;
+        ++appsVersion;
+        indexSignature = signature;
+        // A full pass writes the snapshot itself.
+        snapshotChanged = false;
+        if (updateListener != null) {
+            updateListener.onUpdate(progressive);
+        }
+    }
+
+    private void storeSnapshot() {
+        if (!snapshotChanged || appContext == null) {
+            return;
+        }
+        snapshotChanged = false;
+        Context context = appContext;
+        String signature = indexSignature;
+        String icons = iconSignature;
+        List<AppIcon> snapshot = new ArrayList<>(apps.values());
+        int pieSize = pieIconSize;
+        int listSize = listIconSize;
+        PieLauncherApp.scheduler.execute(
+                BackgroundScheduler.PRIORITY_INDEX, () ->
+                        AppIndexCache.store(context, signature, icons,
+                                snapshot, pieSize, listSize));
+    }
+
+    // Builds a new index for the current apps on a worker and keeps
+    // using the old one until it's ready.
+    private void rebuildSearchIndexAsync() {
+        Locale locale = Locale.getDefault();
+        List<AppIcon> snapshot = new ArrayList<>(apps.values());
+        int version = appsVersion;
+        PieLauncherApp.scheduler.execute(
+                BackgroundScheduler.PRIORITY_SEARCH, () -> {
+            SearchIndex index = new SearchIndex(snapshot, locale);
+            handler.post(() -> {
+                // Don't replace an index for a newer set of apps.
+                if (appsVersion == version) {
+                    searchIndex = index;
+                    // Order of the list may have changed.
+                    if (updateListener != null) {
+                        updateListener.onUpdate(false);
+                    }
                 }
             });
         });
-        return true;
+    }
+
+    // Built while indexing or on a worker, only built here if the
+    // locale changed and the index for it isn't ready yet.
+    private SearchIndex getSearchIndex(Locale locale) {
+        if (searchIndex == null || !searchIndex.locale.equals(locale)) {
+            searchIndex = new SearchIndex(apps.values(), locale);
+        }
+        return searchIndex;
+    }
+
+    // Search results are always ranked, the full list only if the
+    // user wants that.
+    private LaunchHistory getRanking(Preferences prefs, String query) {
+        return !query.isEmpty() ||
+                prefs.getListOrder() == Preferences.LIST_ORDER_USAGE
+                ? launchHistory
+                : null;
+    }
+
+    private static String normalizeQuery(String query, Locale locale) {
+        return query == null
+                ? ""
+                : SearchIndex.fold(query.trim().toLowerCase(locale));
+    }
+
+    private static String getIndexSignature(Context context) {
+        // Everything that changes labels or icons without changing
+        // the update time of a package.
+        return Locale.getDefault() + ";" + getIconSignature(context);
+    }
+
+    private static String getIconSignature(Context context) {
+        // Everything that changes just the icons.
+        return PieLauncherApp.getPrefs(context).getIconPack() + ";" +
+                context.getResources().getDisplayMetrics().densityDpi + ";" +
+                ConfigurationChangedReceiver.getPrimaryColor(context);
+    }
+
+    private static void restoreSnapshot(
+            Context context,
+            String signature,
+            String iconSignature,
+            Map<LauncherItemKey, AppIcon> allApps) {
+        for (AppIndexCache.Entry entry :
+                AppIndexCache.restore(context, signature, iconSignature)) {
+            allApps.put(entry.key, new AppIcon(
+                    entry.key.componentName,
+                    entry.label,
+                    // Loaded from the icon file when it's needed.
+                    null,
+                    // Keep userHandle null like indexIntentsApps() does.
+                    HAS_LAUNCHER_APP ? entry.key.userHandle : null,
+                    entry.lastUpdateTime));
+        }
     }
 
     private static void indexApps(
             Context context,
-            String packageNameRestriction,
-            UserHandle userHandleRestriction,
+            List<IndexQueue.PackageRequest> packages,
             HashSet<String> hideApps,
-            Map<LauncherItemKey, AppIcon> allApps) {
+            Map<LauncherItemKey, AppIcon> reusableApps,
+            Map<LauncherItemKey, AppIcon> allApps,
+            PartialListener partialListener) {
+        long start = SystemClock.elapsedRealtime();
         PackageManager pm = context.getPackageManager();
         PieLauncherApp.iconPack.selectPack(pm,
                 PieLauncherApp.getPrefs(context).getIconPack());
         PieLauncherApp.iconPack.restoreMappings(context);
         hideApps.add(context.getPackageName());
+        // Collect what needs to be indexed first. This is just a few
+        // binder calls and needs to be done in order.
+        ArrayList<PendingApp> pendingApps = new ArrayList<>();
+        if (packages == null) {
+            collectApps(context, pm, null, null, hideApps, reusableApps,
+                    allApps, pendingApps);
+        } else {
+            for (IndexQueue.PackageRequest pr : packages) {
+                collectApps(context, pm, pr.packageName, pr.userHandle,
+                        hideApps, reusableApps, allApps, pendingApps);
+            }
+        }
+        long collected = SystemClock.elapsedRealtime();
+        PartialPublisher publisher = partialListener != null
+                ? new PartialPublisher(allApps, partialListener)
+                : null;
+        // Loading labels is what takes time, and it's independent for
+        // every app. Icons are rasterized later by AppIconLoader.
+        PieLauncherApp.scheduler.runParallel(
+                BackgroundScheduler.PRIORITY_INDEX,
+                pendingApps.size(),
+                (i) -> {
+                    PendingApp pendingApp = pendingApps.get(i);
+                    pendingApp.createAppIcon(pm);
+                    if (publisher != null) {
+                        publisher.add(pendingApp);
+                    }
+                });
+        long labeled = SystemClock.elapsedRealtime();
+        int reused = allApps.size();
+        // Merge in the order of collection to get the same result
+        // as if everything was done on one thread.
+        for (PendingApp pendingApp : pendingApps) {
+            if (pendingApp.appIcon != null) {
+                allApps.put(new LauncherItemKey(pendingApp.componentName,
+                        pendingApp.userHandle), pendingApp.appIcon);
+            }
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, String.format(Locale.US,
+                    "indexed %d apps (%d reused): collect %d ms, " +
+                            "labels %d ms, merge %d ms",
+                    allApps.size(),
+                    reused,
+                    collected - start,
+                    labeled - collected,
+                    SystemClock.elapsedRealtime() - labeled));
+        }
+    }
+
+    private static void collectApps(
+            Context context,
+            PackageManager pm,
+            String packageNameRestriction,
+            UserHandle userHandleRestriction,
+            HashSet<String> hideApps,
+            Map<LauncherItemKey, AppIcon> reusableApps,
+            Map<LauncherItemKey, AppIcon> allApps,
+            List<PendingApp> pendingApps) {
         if (HAS_LAUNCHER_APP) {
-            indexProfilesApps(
+            collectProfilesApps(
                     (LauncherApps) context.getSystemService(
                             Context.LAUNCHER_APPS_SERVICE),
                     (UserManager) context.getSystemService(
                             Context.USER_SERVICE),
-                    allApps, packageNameRestriction, userHandleRestriction,
-                    hideApps);
+                    pm, allApps, packageNameRestriction,
+                    userHandleRestriction, hideApps, reusableApps,
+                    pendingApps);
         } else {
-            indexIntentsApps(pm, allApps, packageNameRestriction, hideApps);
+            collectIntentsApps(pm, allApps, packageNameRestriction,
+                    hideApps, reusableApps, pendingApps);
         }
     }
 
-    private static void indexIntentsApps(
+    private static void collectIntentsApps(
             PackageManager pm,
             Map<LauncherItemKey, AppIcon> allApps,
             String packageNameRestriction,
-            Set<String> hideApps) {
+            Set<String> hideApps,
+            Map<LauncherItemKey, AppIcon> reusableApps,
+            List<PendingApp> pendingApps) {
+        HashMap<String, Long> updateTimes = new HashMap<>();
         Intent intent = new Intent(Intent.ACTION_MAIN, null);
         intent.addCategory(Intent.CATEGORY_LAUNCHER);
         if (packageNameRestriction != null) {
@@ -349,26 +1125,30 @@ public class AppMenu extends CanvasPieMenu {
             if (hideApps.contains(packageName)) {
                 continue;
             }
-            Drawable icon = PieLauncherApp.iconPack.getIcon(packageName);
-            if (icon == null) {
-                icon = info.loadIcon(pm);
+            ComponentName componentName = getComponentName(info.activityInfo);
+            long lastUpdateTime = getLastUpdateTime(pm, packageName,
+                    updateTimes);
+            if (reuseApp(allApps, reusableApps, componentName, null,
+                    lastUpdateTime)) {
+                continue;
             }
-            addApp(allApps,
-                    getComponentName(info.activityInfo),
-                    info.loadLabel(pm).toString(),
-                    icon,
-                    null);
+            pendingApps.add(new PendingApp(componentName, null,
+                    lastUpdateTime, info, null));
         }
     }
 
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    private static void indexProfilesApps(
+    private static void collectProfilesApps(
             LauncherApps la,
             UserManager um,
+            PackageManager pm,
             Map<LauncherItemKey, AppIcon> allApps,
             String packageNameRestriction,
             UserHandle userHandleRestriction,
-            Set<String> hideApps) {
+            Set<String> hideApps,
+            Map<LauncherItemKey, AppIcon> reusableApps,
+            List<PendingApp> pendingApps) {
+        HashMap<String, Long> updateTimes = new HashMap<>();
         List<UserHandle> profiles =
                 packageNameRestriction != null && userHandleRestriction != null
                         ? Collections.singletonList(userHandleRestriction)
@@ -383,51 +1163,101 @@ public class AppMenu extends CanvasPieMenu {
                     // Always skip this package.
                     continue;
                 }
-                Drawable icon = PieLauncherApp.iconPack.getIcon(packageName);
-                if (icon == null &&
-                        (icon = getBadgedIcon(info)) == null) {
+                ComponentName componentName = info.getComponentName();
+                long lastUpdateTime = getLastUpdateTime(pm, packageName,
+                        updateTimes);
+                if (lastUpdateTime == 0) {
+                    // Only installed in another profile.
+                    lastUpdateTime = getSourceLastModified(info);
+                }
+                if (reuseApp(allApps, reusableApps, componentName, profile,
+                        lastUpdateTime)) {
                     continue;
                 }
-                addApp(allApps,
-                        info.getComponentName(),
-                        info.getLabel().toString(),
-                        icon,
-                        profile);
+                pendingApps.add(new PendingApp(componentName, profile,
+                        lastUpdateTime, null, info));
+            }
+        }
+    }
+
+    private static boolean reuseApp(Map<LauncherItemKey, AppIcon> allApps,
+                                    Map<LauncherItemKey, AppIcon> reusableApps,
+                                    ComponentName componentName,
+                                    UserHandle userHandle,
+                                    long lastUpdateTime) {
+        if (reusableApps.isEmpty() || lastUpdateTime == 0) {
+            return false;
+        }
+        LauncherItemKey key = new LauncherItemKey(componentName, userHandle);
+        AppIcon appIcon = reusableApps.get(key);
+        if (appIcon == null || appIcon.lastUpdateTime != lastUpdateTime) {
+            return false;
+        }
+        // Package wasn't updated, so label and icon are still valid.
+        allApps.put(key, appIcon);
+        return true;
+    }
+
+    private static long getLastUpdateTime(PackageManager pm,
+                                          String packageName,
+                                          Map<String, Long> updateTimes) {
+        Long lastUpdateTime = updateTimes.get(packageName);
+        if (lastUpdateTime == null) {
+            lastUpdateTime = getPackageLastUpdateTime(pm, packageName);
+            updateTimes.put(packageName, lastUpdateTime);
+        }
+        return lastUpdateTime;
+    }
+
+    private static long getPackageLastUpdateTime(PackageManager pm,
+                                                 String packageName) {
+        // 0 means unknown and makes sure the app is always indexed.
+        // This is the case for apps that are only installed in
+        // another profile, see getSourceLastModified().
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                return pm.getPackageInfo(packageName,
+                        PackageManager.PackageInfoFlags.of(0)).lastUpdateTime;
+            } else {
+                return pm.getPackageInfo(packageName, 0).lastUpdateTime;
             }
+        } catch (Exception e) {
+            return 0L;
         }
     }
 
+    // The APK is replaced on every update, so its modification time
+    // works as a version stamp in every profile.
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    private static Drawable getBadgedIcon(LauncherActivityInfo info) {
-        // According to Vitals, `getBadgedIcon()` can throw a NPE
-        // for some unknown reason. Let's try `getIcon()` then.
+    private static long getSourceLastModified(LauncherActivityInfo info) {
         try {
-            return info.getBadgedIcon(0);
+            String sourceDir = info.getApplicationInfo().sourceDir;
+            return sourceDir != null ? new File(sourceDir).lastModified() : 0L;
         } catch (Exception e) {
-            try {
-                return info.getIcon(0);
-            } catch (Exception e2) {
-                return null;
-            }
+            return 0L;
         }
     }
 
     private static AppIcon addApp(Map<LauncherItemKey, AppIcon> allApps,
                                   ComponentName componentName, String label,
-                                  Drawable icon, UserHandle userHandle) {
-        AppIcon appIcon = new AppIcon(componentName, label, icon, userHandle);
+                                  Drawable icon, UserHandle userHandle,
+                                  long lastUpdateTime) {
+        AppIcon appIcon = new AppIcon(componentName, label,
+                Converter.getBitmapFromDrawable(icon), userHandle,
+                lastUpdateTime);
         allApps.put(new LauncherItemKey(componentName, userHandle), appIcon);
         return appIcon;
     }
 
     private List<Icon> createMenu(Context context,
                                   Map<LauncherItemKey, AppIcon> allApps,
-                                  boolean useDrawerIcon) {
+                                  boolean useDrawerIcon,
+                                  boolean createInitialMenu) {
         AppMenu.Icon drawerIcon = useDrawerIcon
                 ? addDrawerIcon(context, allApps)
                 : null;
         ArrayList<Icon> menu = Menu.restore(context, allApps);
-        if (menu.isEmpty()) {
+        if (menu.isEmpty() && createInitialMenu) {
             createInitialMenu(menu, allApps, context.getPackageManager());
         }
         if (drawerIcon != null) {
@@ -454,7 +1284,8 @@ public class AppMenu extends CanvasPieMenu {
                 new ComponentName(drawerPackageName, "Drawer"),
                 "Drawer",
                 icon,
-                null);
+                null,
+                0L);
     }
 
     private static void createInitialMenu(List<Icon> menu,
@@ -552,28 +1383,45 @@ public class AppMenu extends CanvasPieMenu {
         }
     }
 
-    private static void removePackageFromApps(
+    // Returns the apps that were removed.
+    private static List<AppIcon> removePackageFromApps(
             Map<LauncherItemKey, AppIcon> allApps,
             String packageName,
             UserHandle userHandle) {
+        ArrayList<AppIcon> removed = new ArrayList<>();
         Iterator<Map.Entry<LauncherItemKey, AppIcon>> it =
                 allApps.entrySet().iterator();
         while (it.hasNext()) {
             AppIcon appIcon = it.next().getValue();
-            if (packageName.equals(appIcon.componentName.getPackageName()) &&
-                    (userHandle == null || userHandle.equals(appIcon.userHandle))) {
+            if (isInPackage(appIcon, packageName, userHandle)) {
+                removed.add(appIcon);
                 it.remove();
             }
         }
+        return removed;
+    }
+
+    private static boolean isInPackages(AppIcon appIcon,
+                                        List<IndexQueue.PackageRequest> packages) {
+        for (IndexQueue.PackageRequest pr : packages) {
+            if (isInPackage(appIcon, pr.packageName, pr.userHandle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInPackage(AppIcon appIcon, String packageName,
+                                       UserHandle userHandle) {
+        return packageName.equals(appIcon.componentName.getPackageName()) &&
+                (userHandle == null || userHandle.equals(appIcon.userHandle));
     }
 
     private void removePackageFromPieMenu(String packageName,
                                           UserHandle userHandle) {
         Iterator<Icon> it = icons.iterator();
         while (it.hasNext()) {
-            AppIcon appIcon = ((AppIcon) it.next());
-            if (packageName.equals(appIcon.componentName.getPackageName()) &&
-                    (userHandle == null || userHandle.equals(appIcon.userHandle))) {
+            if (isInPackage((AppIcon) it.next(), packageName, userHandle)) {
                 it.remove();
             }
         }
@@ -587,23 +1435,4 @@ public class AppMenu extends CanvasPieMenu {
         }
         return launcherApps;
     }
-
-    private static String getSubject(int item, AppIcon appIcon,
-                                     Locale defaultLocale) {
-        if (item == Preferences.SEARCH_PARAMETER_PACKAGE_NAME) {
-            return appIcon.componentName.getPackageName()
-                    .toLowerCase(defaultLocale);
-        }
-        return appIcon.label.toLowerCase(defaultLocale);
-    }
-
-    private static int hammingDistance(String a, String b) {
-        int count = 0;
-        for (int i = 0, l = Math.min(a.length(), b.length()); i < l; ++i) {
-            if (a.charAt(i) != b.charAt(i)) {
-                ++count;
-            }
-        }
-        return count;
-    }
 }
@@ -0,0 +1,120 @@
+package de.markusfisch.android.pielauncher.content;
+
+// Scores how well a query matches a subject. The query is compiled
+// once so matching doesn't allocate anything per subject.
+// Lower scores are better.
+class FuzzyMatcher {
+	static final int NO_MATCH = -1;
+	static final int SCORE_PREFIX = 0;
+	static final int SCORE_WORD = 1;
+	static final int SCORE_CONTAINS = 2;
+	// Approximate matches score SCORE_CONTAINS plus their distance.
+	private static final int MAX_ERRORS = 2;
+	static final int MAX_SCORE = SCORE_CONTAINS + MAX_ERRORS;
+
+	// The bit vectors are longs, so only this many characters of
+	// the query count for the edit distance.
+	private static final int MAX_PATTERN_LENGTH = 64;
+
+	private final String query;
+	private final int maxErrors;
+	private final int patternLength;
+	private final long highBit;
+	private final int[] keys;
+	private final long[] masks;
+	private final int tableMask;
+
+	FuzzyMatcher(String query) {
+		this.query = query;
+		maxErrors = getMaxErrors(query);
+		patternLength = Math.min(query.length(), MAX_PATTERN_LENGTH);
+		highBit = patternLength > 0 ? 1L << (patternLength - 1) : 0;
+		// Open addressing table from character to the bit mask of its
+		// positions in the query.
+		int tableSize = 8;
+		while (tableSize < patternLength * 2) {
+			tableSize <<= 1;
+		}
+		tableMask = tableSize - 1;
+		keys = new int[tableSize];
+		masks = new long[tableSize];
+		for (int i = 0; i < tableSize; ++i) {
+			keys[i] = -1;
+		}
+		for (int i = 0; i < patternLength; ++i) {
+			char c = query.charAt(i);
+			int slot = c & tableMask;
+			while (keys[slot] != -1 && keys[slot] != c) {
+				slot = (slot + 1) & tableMask;
+			}
+			keys[slot] = c;
+			masks[slot] |= 1L << i;
+		}
+	}
+
+	// Short queries would match almost anything with errors.
+	static int getMaxErrors(String query) {
+		return Math.min(MAX_ERRORS, query.length() / 4);
+	}
+
+	int score(String subject) {
+		int at = subject.indexOf(query);
+		if (at == 0) {
+			return SCORE_PREFIX;
+		} else if (at > 0) {
+			do {
+				if (!Character.isLetterOrDigit(subject.charAt(at - 1))) {
+					return SCORE_WORD;
+				}
+				at = subject.indexOf(query, at + 1);
+			} while (at > 0);
+			return SCORE_CONTAINS;
+		} else if (maxErrors < 1) {
+			return NO_MATCH;
+		}
+		int distance = getDistance(subject);
+		return distance <= maxErrors ? SCORE_CONTAINS + distance : NO_MATCH;
+	}
+
+	// Smallest edit distance between the query and any substring of
+	// subject, computed with Myers' bit-parallel algorithm.
+	private int getDistance(String subject) {
+		long pv = -1L;
+		long mv = 0;
+		int distance = patternLength;
+		int best = distance;
+		for (int i = 0, l = subject.length(); i < l; ++i) {
+			long eq = getMask(subject.charAt(i));
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+			if ((ph & highBit) != 0) {
+				++distance;
+			} else if ((mh & highBit) != 0) {
+				--distance;
+			}
+			// Not shifting in a 1 lets a match start anywhere.
+			ph <<= 1;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+			if (distance < best) {
+				best = distance;
+			}
+		}
+		return best;
+	}
+
+	private long getMask(char c) {
+		int slot = c & tableMask;
+		int key;
+		while ((key = keys[slot]) != -1) {
+			if (key == c) {
+				return masks[slot];
+			}
+			slot = (slot + 1) & tableMask;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,107 @@
+package de.markusfisch.android.pielauncher.content;
+
+import android.os.UserHandle;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+// Collects index requests while a pass is running and merges them
+// into one request for the next pass. Must only be used from the
+// main thread.
+class IndexQueue {
+	static class PackageRequest {
+		final String packageName;
+		// May be null to index the package in all profiles.
+		final UserHandle userHandle;
+
+		PackageRequest(String packageName, UserHandle userHandle) {
+			this.packageName = packageName;
+			this.userHandle = userHandle;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof PackageRequest)) {
+				return false;
+			}
+			PackageRequest request = (PackageRequest) o;
+			return packageName.equals(request.packageName) &&
+					(userHandle == null
+							? request.userHandle == null
+							: userHandle.equals(request.userHandle));
+		}
+
+		@Override
+		public int hashCode() {
+			return packageName.hashCode() * 31 +
+					(userHandle == null ? 0 : userHandle.hashCode());
+		}
+	}
+
+	static class Request {
+		// Null for a full pass.
+		final List<PackageRequest> packages;
+		final boolean reuseIcons;
+
+		private Request(List<PackageRequest> packages, boolean reuseIcons) {
+			this.packages = packages;
+			this.reuseIcons = reuseIcons;
+		}
+
+		boolean isFull() {
+			return packages == null;
+		}
+	}
+
+	private final LinkedHashSet<PackageRequest> packages =
+			new LinkedHashSet<>();
+
+	private boolean fullPending;
+	private boolean reuseIcons;
+	private boolean running;
+
+	void addFull(boolean reuse) {
+		// A full pass covers all pending packages.
+		packages.clear();
+		reuseIcons = fullPending ? reuseIcons && reuse : reuse;
+		fullPending = true;
+	}
+
+	void addPackage(String packageName, UserHandle userHandle) {
+		if (!fullPending) {
+			packages.add(new PackageRequest(packageName, userHandle));
+		}
+	}
+
+	boolean isBusy() {
+		return running || fullPending || !packages.isEmpty();
+	}
+
+	// Returns the merged pending request or null if a pass is still
+	// running or there's nothing to do.
+	Request poll() {
+		if (running) {
+			return null;
+		}
+		Request request;
+		if (fullPending) {
+			request = new Request(null, reuseIcons);
+		} else if (!packages.isEmpty()) {
+			request = new Request(new ArrayList<>(packages), true);
+		} else {
+			return null;
+		}
+		fullPending = false;
+		packages.clear();
+		running = true;
+		return request;
+	}
+
+	void finish() {
+		running = false;
+	}
+}
@@ -0,0 +1,55 @@
+package de.markusfisch.android.pielauncher.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Remembers the results of the most recent queries. All entries are
+// dropped as soon as the index or the launch history changes.
+// Must only be used from the main thread.
+class SearchCache {
+	private static final int MAX_ENTRIES = 32;
+
+	private final LinkedHashMap<String, SearchIndex.Matches> entries =
+			new LinkedHashMap<String, SearchIndex.Matches>(
+					MAX_ENTRIES, .75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, SearchIndex.Matches> eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			};
+
+	private SearchIndex index;
+	private int historyGeneration;
+
+	static String getKey(String query, int strategy, int parameter,
+			boolean ranked) {
+		return strategy + ":" + parameter + ":" + (ranked ? 1 : 0) + ":" +
+				query;
+	}
+
+	SearchIndex.Matches get(SearchIndex index, int historyGeneration,
+			String key) {
+		if (this.index != index ||
+				this.historyGeneration != historyGeneration) {
+			entries.clear();
+			this.index = index;
+			this.historyGeneration = historyGeneration;
+			return null;
+		}
+		return entries.get(key);
+	}
+
+	// Results for an outdated index or history are ignored.
+	void put(SearchIndex index, int historyGeneration, String key,
+			SearchIndex.Matches matches) {
+		if (this.index == index &&
+				this.historyGeneration == historyGeneration) {
+			entries.put(key, matches);
+		}
+	}
+
+	void clear() {
+		entries.clear();
+	}
+}
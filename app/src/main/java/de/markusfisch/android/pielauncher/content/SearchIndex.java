@@ -0,0 +1,646 @@
+package de.markusfisch.android.pielauncher.content;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import de.markusfisch.android.pielauncher.io.LaunchHistory;
+import de.markusfisch.android.pielauncher.preference.Preferences;
+
+// Keeps the lower case, folded subjects of all apps in display order
+// so searching doesn't need to transform or sort anything per keystroke.
+// Immutable, so it can be built and used on any thread.
+class SearchIndex {
+	static class Matches {
+		final List<AppMenu.AppIcon> apps;
+
+		private final SearchIndex index;
+		private final String query;
+		private final int strategy;
+		private final int parameter;
+		// Indices of all apps that matched in ascending order or
+		// null for all apps.
+		private final int[] candidates;
+		private final int count;
+
+		private Matches(SearchIndex index, String query, int strategy,
+				int parameter, int[] candidates, int count,
+				List<AppMenu.AppIcon> apps) {
+			this.index = index;
+			this.query = query;
+			this.strategy = strategy;
+			this.parameter = parameter;
+			this.candidates = candidates;
+			this.count = count;
+			this.apps = apps;
+		}
+	}
+
+	final Locale locale;
+
+	// Sorted in display order.
+	private final Entry[] entries;
+	private final AppMenu.AppIcon[] apps;
+	private final String[] labels;
+	private final String[] packageNames;
+	// Label and package name in one string for searching both at once.
+	// Matches before labelEnds[i] are in the label.
+	private final String[] labelsAndPackageNames;
+	private final int[] labelEnds;
+	private final String[] labelDigits;
+	private final String[] packageDigits;
+	private final String[] labelAndPackageDigits;
+	private final String[] labelInitials;
+	private final String[] packageInitials;
+	// Maps the first INITIALS_KEY_LENGTH initials to the apps that
+	// have them, in display order.
+	private final HashMap<String, int[]> labelInitialsTable;
+	private final HashMap<String, int[]> packageInitialsTable;
+
+	private static final int INITIALS_KEY_LENGTH = 2;
+	private static final byte LABEL_INITIALS = 1;
+	private static final byte PACKAGE_INITIALS = 2;
+	// Can't be typed, so a query never matches across both fields.
+	private static final char SEPARATOR = '\u0000';
+	// Keypad digit of every letter from a to z.
+	private static final String KEYPAD = "22233344455566677778889999";
+
+	SearchIndex(Collection<AppMenu.AppIcon> allApps, Locale locale) {
+		this(locale, createEntries(allApps, locale));
+	}
+
+	private SearchIndex(Locale locale, Entry[] entries) {
+		this.locale = locale;
+		this.entries = entries;
+		int size = entries.length;
+		apps = new AppMenu.AppIcon[size];
+		labels = new String[size];
+		packageNames = new String[size];
+		labelsAndPackageNames = new String[size];
+		labelEnds = new int[size];
+		labelDigits = new String[size];
+		packageDigits = new String[size];
+		labelAndPackageDigits = new String[size];
+		labelInitials = new String[size];
+		packageInitials = new String[size];
+		for (int i = 0; i < size; ++i) {
+			Entry entry = entries[i];
+			apps[i] = entry.appIcon;
+			labels[i] = entry.label;
+			packageNames[i] = entry.packageName;
+			labelsAndPackageNames[i] = entry.labelAndPackageName;
+			labelEnds[i] = entry.label.length();
+			labelDigits[i] = entry.labelDigits;
+			packageDigits[i] = entry.packageDigits;
+			labelAndPackageDigits[i] = entry.labelAndPackageDigits;
+			labelInitials[i] = entry.labelInitials;
+			packageInitials[i] = entry.packageInitials;
+		}
+		labelInitialsTable = createInitialsTable(labelInitials);
+		packageInitialsTable = createInitialsTable(packageInitials);
+	}
+
+	// Returns a new index without the removed apps and with the added
+	// apps. Only the added apps need to be folded and collated, all
+	// other entries are taken over as they are.
+	SearchIndex update(Collection<AppMenu.AppIcon> removed,
+			Collection<AppMenu.AppIcon> added) {
+		HashSet<AppMenu.AppIcon> removedApps = new HashSet<>(removed);
+		Entry[] addedEntries = createEntries(added, locale);
+		Entry[] merged = new Entry[entries.length + addedEntries.length];
+		int size = 0;
+		int a = 0;
+		for (Entry entry : entries) {
+			if (removedApps.contains(entry.appIcon)) {
+				continue;
+			}
+			while (a < addedEntries.length &&
+					addedEntries[a].compareTo(entry) < 0) {
+				merged[size++] = addedEntries[a++];
+			}
+			merged[size++] = entry;
+		}
+		while (a < addedEntries.length) {
+			merged[size++] = addedEntries[a++];
+		}
+		return new SearchIndex(locale, size < merged.length
+				? Arrays.copyOf(merged, size)
+				: merged);
+	}
+
+	int size() {
+		return apps.length;
+	}
+
+	AppMenu.AppIcon get(int index) {
+		return apps[index];
+	}
+
+	// Returns matching apps in display order. Query must be lower case.
+	// If history isn't null, apps of the same quality are ordered by
+	// how often they were launched instead.
+	// If query extends the query of previous, only the apps that
+	// matched before need to be looked at again.
+	Matches filter(String query, int strategy, int parameter,
+			LaunchHistory history, Matches previous) {
+		int[] candidates = null;
+		int candidateCount = apps.length;
+		if (previous != null && previous.index == this &&
+				previous.strategy == strategy &&
+				previous.parameter == parameter &&
+				query.startsWith(previous.query) &&
+				// A longer query may allow more errors.
+				(strategy != Preferences.SEARCH_STRICTNESS_FUZZY ||
+						FuzzyMatcher.getMaxErrors(query) ==
+								FuzzyMatcher.getMaxErrors(previous.query))) {
+			candidates = previous.candidates;
+			candidateCount = previous.count;
+		}
+		if (query.isEmpty()) {
+			ArrayList<AppMenu.AppIcon> list =
+					new ArrayList<>(Arrays.asList(apps));
+			sortByUsage(list, history);
+			return new Matches(this, query, strategy, parameter,
+					null, apps.length, list);
+		}
+		switch (strategy) {
+			case Preferences.SEARCH_STRICTNESS_FUZZY:
+				return filterFuzzy(query, parameter, history,
+						candidates, candidateCount);
+			case Preferences.SEARCH_STRICTNESS_INITIALS:
+				return filterInitials(query, parameter, history,
+						candidates, candidateCount);
+			case Preferences.SEARCH_STRICTNESS_T9:
+				return filterDigits(query, parameter, history,
+						candidates, candidateCount);
+			default:
+				return filterText(query, strategy, parameter, history,
+						candidates, candidateCount);
+		}
+	}
+
+	// Exact matches first, then apps that differ in just one character
+	// for HAMMING.
+	private Matches filterText(String query, int strategy, int parameter,
+			LaunchHistory history, int[] candidates, int candidateCount) {
+		boolean both = parameter == Preferences.SEARCH_PARAMETER_BOTH;
+		String[] subjects = getSubjects(parameter);
+		Buckets buckets = new Buckets(2, both);
+		int[] matched = new int[candidateCount];
+		int count = 0;
+		for (int c = 0; c < candidateCount; ++c) {
+			int i = candidates != null ? candidates[c] : c;
+			String subject = subjects[i];
+			int at;
+			if (strategy == Preferences.SEARCH_STRICTNESS_STARTS_WITH) {
+				if (subject.startsWith(query)) {
+					at = 0;
+				} else if (both &&
+						subject.startsWith(query, labelEnds[i] + 1)) {
+					at = labelEnds[i] + 1;
+				} else {
+					at = -1;
+				}
+			} else {
+				// HAMMING includes CONTAINS for historical reasons.
+				at = subject.indexOf(query);
+			}
+			if (at > -1) {
+				buckets.add(0, both && at > labelEnds[i], apps[i]);
+			} else if (strategy != Preferences.SEARCH_STRICTNESS_HAMMING) {
+				continue;
+			} else if (hammingDistance(both ? labels[i] : subject,
+					query) < 2) {
+				// Only add hamming matches after exact matches as
+				// they're less likely as good.
+				buckets.add(1, false, apps[i]);
+			} else if (both && hammingDistance(packageNames[i], query) < 2) {
+				buckets.add(1, true, apps[i]);
+			} else {
+				continue;
+			}
+			// A longer query can't have fewer mismatches, so
+			// hamming matches are candidates just like exact ones.
+			matched[count++] = i;
+		}
+		return new Matches(this, query, strategy, parameter,
+				matched, count, buckets.toList(count, history));
+	}
+
+	// Apps are grouped by score and every group stays in display order.
+	private Matches filterFuzzy(String query, int parameter,
+			LaunchHistory history, int[] candidates, int candidateCount) {
+		boolean both = parameter == Preferences.SEARCH_PARAMETER_BOTH;
+		// Label and package name are scored separately when both are
+		// searched because an approximate match could span both.
+		String[] subjects = both ? labels : getSubjects(parameter);
+		FuzzyMatcher matcher = new FuzzyMatcher(query);
+		Buckets buckets = new Buckets(FuzzyMatcher.MAX_SCORE + 1, both);
+		int[] matched = new int[candidateCount];
+		int count = 0;
+		for (int c = 0; c < candidateCount; ++c) {
+			int i = candidates != null ? candidates[c] : c;
+			int score = matcher.score(subjects[i]);
+			boolean packageName = false;
+			if (both) {
+				int packageScore = matcher.score(packageNames[i]);
+				if (packageScore != FuzzyMatcher.NO_MATCH &&
+						(score == FuzzyMatcher.NO_MATCH ||
+								packageScore < score)) {
+					score = packageScore;
+					packageName = true;
+				}
+			}
+			if (score != FuzzyMatcher.NO_MATCH) {
+				buckets.add(score, packageName, apps[i]);
+				matched[count++] = i;
+			}
+		}
+		return new Matches(this, query, Preferences.SEARCH_STRICTNESS_FUZZY,
+				parameter, matched, count, buckets.toList(count, history));
+	}
+
+	// Apps whose initials start with query come first, then all apps
+	// whose subject contains query.
+	private Matches filterInitials(String query, int parameter,
+			LaunchHistory history, int[] candidates, int candidateCount) {
+		boolean both = parameter == Preferences.SEARCH_PARAMETER_BOTH;
+		boolean packages =
+				parameter == Preferences.SEARCH_PARAMETER_PACKAGE_NAME;
+		String[] subjects = getSubjects(parameter);
+		byte[] initialsMatch = new byte[apps.length];
+		if (!packages) {
+			markInitials(initialsMatch, LABEL_INITIALS, query,
+					labelInitials, labelInitialsTable,
+					candidates, candidateCount);
+		}
+		if (packages || both) {
+			markInitials(initialsMatch, PACKAGE_INITIALS, query,
+					packageInitials, packageInitialsTable,
+					candidates, candidateCount);
+		}
+		Buckets buckets = new Buckets(2, both);
+		int[] matched = new int[candidateCount];
+		int count = 0;
+		for (int c = 0; c < candidateCount; ++c) {
+			int i = candidates != null ? candidates[c] : c;
+			int at;
+			if (initialsMatch[i] != 0) {
+				buckets.add(0, both && initialsMatch[i] == PACKAGE_INITIALS,
+						apps[i]);
+			} else if ((at = subjects[i].indexOf(query)) > -1) {
+				buckets.add(1, both && at > labelEnds[i], apps[i]);
+			} else {
+				continue;
+			}
+			matched[count++] = i;
+		}
+		return new Matches(this, query, Preferences.SEARCH_STRICTNESS_INITIALS,
+				parameter, matched, count, buckets.toList(count, history));
+	}
+
+	private void markInitials(byte[] marks, byte mark, String query,
+			String[] initials, HashMap<String, int[]> table,
+			int[] candidates, int candidateCount) {
+		if (candidates == null) {
+			// Only the apps in the table can have matching initials.
+			candidates = table.get(query.substring(0,
+					Math.min(query.length(), INITIALS_KEY_LENGTH)));
+			if (candidates == null) {
+				return;
+			}
+			candidateCount = candidates.length;
+		}
+		for (int c = 0; c < candidateCount; ++c) {
+			int i = candidates[c];
+			if (marks[i] == 0 && initials[i].startsWith(query)) {
+				marks[i] = mark;
+			}
+		}
+	}
+
+	// Apps whose digit sequence starts with the digits of query come
+	// first, then all apps whose sequence contains them.
+	private Matches filterDigits(String query, int parameter,
+			LaunchHistory history, int[] candidates, int candidateCount) {
+		boolean both = parameter == Preferences.SEARCH_PARAMETER_BOTH;
+		String[] subjects;
+		switch (parameter) {
+			case Preferences.SEARCH_PARAMETER_PACKAGE_NAME:
+				subjects = packageDigits;
+				break;
+			case Preferences.SEARCH_PARAMETER_BOTH:
+				subjects = labelAndPackageDigits;
+				break;
+			default:
+				subjects = labelDigits;
+				break;
+		}
+		// Letters from a hardware keyboard work too.
+		String digits = toDigits(query);
+		Buckets buckets = new Buckets(2, both);
+		int[] matched = new int[candidateCount];
+		int count = 0;
+		for (int c = 0; c < candidateCount; ++c) {
+			int i = candidates != null ? candidates[c] : c;
+			int at = subjects[i].indexOf(digits);
+			if (at < 0) {
+				continue;
+			}
+			if (both && at > labelEnds[i]) {
+				buckets.add(at == labelEnds[i] + 1 ? 0 : 1, true, apps[i]);
+			} else {
+				buckets.add(at == 0 ? 0 : 1, false, apps[i]);
+			}
+			matched[count++] = i;
+		}
+		return new Matches(this, query, Preferences.SEARCH_STRICTNESS_T9,
+				parameter, matched, count, buckets.toList(count, history));
+	}
+
+	private String[] getSubjects(int parameter) {
+		switch (parameter) {
+			case Preferences.SEARCH_PARAMETER_PACKAGE_NAME:
+				return packageNames;
+			case Preferences.SEARCH_PARAMETER_BOTH:
+				return labelsAndPackageNames;
+			default:
+				return labels;
+		}
+	}
+
+	// Maps a lower case, folded string to the digits that would be
+	// typed on a phone keypad. Space is 0, anything else is 1.
+	static String toDigits(String s) {
+		int l = s.length();
+		char[] digits = new char[l];
+		for (int i = 0; i < l; ++i) {
+			char c = s.charAt(i);
+			if (c >= 'a' && c <= 'z') {
+				digits[i] = KEYPAD.charAt(c - 'a');
+			} else if (c >= '0' && c <= '9') {
+				digits[i] = c;
+			} else if (c == ' ') {
+				digits[i] = '0';
+			} else {
+				digits[i] = '1';
+			}
+		}
+		return new String(digits);
+	}
+
+	// Removes diacritics and replaces letters that don't decompose, so
+	// an accented "e" becomes "e" and a German sharp s becomes "ss".
+	static String fold(String s) {
+		int l = s.length();
+		int i = 0;
+		for (; i < l; ++i) {
+			if (s.charAt(i) > 0x7f) {
+				break;
+			}
+		}
+		if (i == l) {
+			// Plain ASCII, nothing to fold.
+			return s;
+		}
+		String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(decomposed.length());
+		for (i = 0, l = decomposed.length(); i < l; ++i) {
+			char c = decomposed.charAt(i);
+			if (Character.getType(c) == Character.NON_SPACING_MARK) {
+				continue;
+			}
+			String replacement = transliterate(c);
+			if (replacement != null) {
+				sb.append(replacement);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String transliterate(char c) {
+		switch (c) {
+			case '\u00df': // small letter sharp s
+				return "ss";
+			case '\u00e6': // small letter ae
+				return "ae";
+			case '\u00c6': // capital letter ae
+				return "AE";
+			case '\u0153': // small ligature oe
+				return "oe";
+			case '\u0152': // capital ligature oe
+				return "OE";
+			case '\u00f8': // small letter o with stroke
+				return "o";
+			case '\u00d8': // capital letter o with stroke
+				return "O";
+			case '\u0142': // small letter l with stroke
+				return "l";
+			case '\u0141': // capital letter l with stroke
+				return "L";
+			case '\u0111': // small letter d with stroke
+				return "d";
+			case '\u0110': // capital letter d with stroke
+				return "D";
+			case '\u00fe': // small letter thorn
+				return "th";
+			case '\u00de': // capital letter thorn
+				return "TH";
+			case '\u0131': // small letter dotless i
+				return "i";
+			default:
+				return null;
+		}
+	}
+
+	// A word starts after a separator, at an upper case letter that
+	// follows a lower case letter (camelCase) and where letters and
+	// digits meet. "Sound Player" gives "sp", "myApp2" gives "ma2".
+	static String getInitials(String s, Locale locale) {
+		StringBuilder sb = new StringBuilder();
+		char prev = ' ';
+		for (int i = 0, l = s.length(); i < l; ++i) {
+			char c = s.charAt(i);
+			if (Character.isLetterOrDigit(c) &&
+					(!Character.isLetterOrDigit(prev) ||
+							(Character.isUpperCase(c) &&
+									Character.isLowerCase(prev)) ||
+							Character.isDigit(c) != Character.isDigit(prev))) {
+				sb.append(c);
+			}
+			prev = c;
+		}
+		return sb.toString().toLowerCase(locale);
+	}
+
+	private static Entry[] createEntries(Collection<AppMenu.AppIcon> apps,
+			Locale locale) {
+		Collator collator = Collator.getInstance(locale);
+		Entry[] entries = new Entry[apps.size()];
+		int i = 0;
+		for (AppMenu.AppIcon appIcon : apps) {
+			entries[i++] = new Entry(appIcon, collator, locale);
+		}
+		Arrays.sort(entries);
+		return entries;
+	}
+
+	private static HashMap<String, int[]> createInitialsTable(
+			String[] initials) {
+		HashMap<String, ArrayList<Integer>> lists = new HashMap<>();
+		for (int i = 0; i < initials.length; ++i) {
+			String s = initials[i];
+			// Every prefix up to the key length, so shorter queries
+			// find their apps too.
+			for (int l = 1, max = Math.min(s.length(), INITIALS_KEY_LENGTH);
+					l <= max; ++l) {
+				String key = s.substring(0, l);
+				ArrayList<Integer> list = lists.get(key);
+				if (list == null) {
+					list = new ArrayList<>();
+					lists.put(key, list);
+				}
+				list.add(i);
+			}
+		}
+		HashMap<String, int[]> table = new HashMap<>();
+		for (Map.Entry<String, ArrayList<Integer>> entry : lists.entrySet()) {
+			ArrayList<Integer> list = entry.getValue();
+			int[] indices = new int[list.size()];
+			for (int i = 0, size = indices.length; i < size; ++i) {
+				indices[i] = list.get(i);
+			}
+			table.put(entry.getKey(), indices);
+		}
+		return table;
+	}
+
+	// Stable, so apps that were launched equally often keep their order.
+	private static void sortByUsage(List<AppMenu.AppIcon> list,
+			LaunchHistory history) {
+		int size = list.size();
+		if (history == null || history.isEmpty() || size < 2) {
+			return;
+		}
+		Ranked[] ranked = new Ranked[size];
+		for (int i = 0; i < size; ++i) {
+			AppMenu.AppIcon appIcon = list.get(i);
+			ranked[i] = new Ranked(appIcon, history.getRank(
+					appIcon.componentName, appIcon.userHandle));
+		}
+		Arrays.sort(ranked);
+		for (int i = 0; i < size; ++i) {
+			list.set(i, ranked[i].appIcon);
+		}
+	}
+
+	private static int hammingDistance(String a, String b) {
+		int count = 0;
+		for (int i = 0, l = Math.min(a.length(), b.length()); i < l; ++i) {
+			if (a.charAt(i) != b.charAt(i)) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	// Collects matches by quality. Label matches come before package
+	// name matches when both are searched.
+	private static class Buckets {
+		private final ArrayList<ArrayList<AppMenu.AppIcon>> lists =
+				new ArrayList<>();
+		private final int qualities;
+
+		private Buckets(int qualities, boolean both) {
+			this.qualities = qualities;
+			for (int i = 0, l = both ? qualities * 2 : qualities; i < l; ++i) {
+				lists.add(new ArrayList<>());
+			}
+		}
+
+		private void add(int quality, boolean packageName,
+				AppMenu.AppIcon appIcon) {
+			lists.get(packageName ? qualities + quality : quality)
+					.add(appIcon);
+		}
+
+		private ArrayList<AppMenu.AppIcon> toList(int count,
+				LaunchHistory history) {
+			ArrayList<AppMenu.AppIcon> list = new ArrayList<>(count);
+			for (ArrayList<AppMenu.AppIcon> bucket : lists) {
+				sortByUsage(bucket, history);
+				list.addAll(bucket);
+			}
+			return list;
+		}
+	}
+
+	private static class Ranked implements Comparable<Ranked> {
+		private final AppMenu.AppIcon appIcon;
+		private final double rank;
+
+		private Ranked(AppMenu.AppIcon appIcon, double rank) {
+			this.appIcon = appIcon;
+			this.rank = rank;
+		}
+
+		@Override
+		public int compareTo(Ranked other) {
+			// Highest rank first.
+			return Double.compare(other.rank, rank);
+		}
+	}
+
+	// Everything that's derived from one app, so it doesn't need to be
+	// computed again when other apps are added or removed.
+	private static class Entry implements Comparable<Entry> {
+		private final AppMenu.AppIcon appIcon;
+		private final CollationKey key;
+		private final String label;
+		private final String packageName;
+		private final String labelAndPackageName;
+		private final String labelDigits;
+		private final String packageDigits;
+		private final String labelAndPackageDigits;
+		private final String labelInitials;
+		private final String packageInitials;
+
+		private Entry(AppMenu.AppIcon appIcon, Collator collator,
+				Locale locale) {
+			this.appIcon = appIcon;
+			String lowerCaseLabel = appIcon.label.toLowerCase(locale);
+			key = collator.getCollationKey(lowerCaseLabel);
+			label = fold(lowerCaseLabel);
+			String name = appIcon.componentName.getPackageName();
+			packageName = fold(name.toLowerCase(locale));
+			labelAndPackageName = label + SEPARATOR + packageName;
+			labelDigits = toDigits(label);
+			packageDigits = toDigits(packageName);
+			// Same length as the folded strings, so labelEnds fits.
+			labelAndPackageDigits = labelDigits + SEPARATOR + packageDigits;
+			labelInitials = getInitials(fold(appIcon.label), locale);
+			packageInitials = getInitials(name, locale);
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			int result = key.compareTo(other.key);
+			return result == 0 &&
+					appIcon.userHandle != null &&
+					other.appIcon.userHandle != null
+					? appIcon.userHandle.hashCode() -
+							other.appIcon.userHandle.hashCode()
+					: result;
+		}
+	}
+}
@@ -7,15 +7,27 @@ import android.graphics.Rect;
 import android.os.SystemClock;
 
 public class CanvasPieMenu extends PieMenu {
+	// Drawn while the bitmap of an icon isn't available yet.
+	public static final int PLACEHOLDER_COLOR = 0x40ffffff;
 	public static final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	public static final Paint placeholderPaint = new Paint(
+			Paint.ANTI_ALIAS_FLAG);
+
+	static {
+		placeholderPaint.setColor(PLACEHOLDER_COLOR);
+	}
 
 	private long lastChange;
 	private float lastT;
 
 	public static class CanvasIcon extends PieMenu.Icon {
 		public final Rect rect = new Rect();
-		public final Bitmap bitmap;
 
+		// May be null until it's loaded. Volatile because bitmaps
+		// may be set from a background thread.
+		private volatile Bitmap bitmap;
+		// Region of an IconAtlas with a scaled copy of bitmap.
+		private IconAtlas.Slot slot;
 		private double smoothedSize;
 		private int smoothedX;
 		private int smoothedY;
@@ -24,6 +36,22 @@ public class CanvasPieMenu extends PieMenu {
 			this.bitmap = bitmap;
 		}
 
+		public Bitmap getBitmap() {
+			return bitmap;
+		}
+
+		public void setBitmap(Bitmap bitmap) {
+			this.bitmap = bitmap;
+		}
+
+		public IconAtlas.Slot getSlot() {
+			return slot;
+		}
+
+		public void setSlot(IconAtlas.Slot slot) {
+			this.slot = slot;
+		}
+
 		void draw(Canvas canvas) {
 			draw(canvas, size, x, y);
 		}
@@ -49,9 +77,13 @@ public class CanvasPieMenu extends PieMenu {
 			}
 			int left = centerX - s;
 			int top = centerY - s;
-			s <<= 1;
-			rect.set(left, top, left + s, top + s);
-			canvas.drawBitmap(bitmap, null, rect, paint);
+			rect.set(left, top, left + s + s, top + s + s);
+			Bitmap b = bitmap;
+			if (b != null) {
+				canvas.drawBitmap(b, null, rect, paint);
+			} else {
+				canvas.drawCircle(centerX, centerY, s, placeholderPaint);
+			}
 		}
 
 		private void initSmoothing() {
@@ -63,7 +95,11 @@ public class CanvasPieMenu extends PieMenu {
 
 	public void draw(Canvas canvas) {
 		for (int n = icons.size(); n-- > 0; ) {
-			((CanvasIcon) icons.get(n)).draw(canvas);
+			CanvasIcon icon = (CanvasIcon) icons.get(n);
+			if (icon.bitmap == null) {
+				requestBitmap(icon);
+			}
+			icon.draw(canvas);
 		}
 	}
 
@@ -71,12 +107,20 @@ public class CanvasPieMenu extends PieMenu {
 		long delta = SystemClock.uptimeMillis() - lastChange;
 		float t = Math.min(1f, delta / 200f);
 		for (int n = icons.size(); n-- > 0; ) {
-			((CanvasIcon) icons.get(n)).drawSmoothed(canvas, t, lastT);
+			CanvasIcon icon = (CanvasIcon) icons.get(n);
+			if (icon.bitmap == null) {
+				requestBitmap(icon);
+			}
+			icon.drawSmoothed(canvas, t, lastT);
 		}
 		lastT = t;
 		return t < 1f;
 	}
 
+	// Called when an icon without a bitmap is about to be drawn.
+	protected void requestBitmap(CanvasIcon icon) {
+	}
+
 	public void updateSmoothing() {
 		lastChange = SystemClock.uptimeMillis();
 		lastT = 0;
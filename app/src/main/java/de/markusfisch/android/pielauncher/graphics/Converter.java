@@ -38,6 +38,27 @@ public class Converter {
 		return bitmap;
 	}
 
+	// Rasterize to exactly the size the bitmap is displayed at, so it
+	// doesn't need to be scaled when it's drawn.
+	public static Bitmap getBitmapFromDrawable(Drawable drawable, int size) {
+		if (size < 1) {
+			return getBitmapFromDrawable(drawable);
+		}
+		if (drawable instanceof BitmapDrawable) {
+			Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+			if (bitmap.getWidth() == size && bitmap.getHeight() == size) {
+				return bitmap;
+			}
+			return Bitmap.createScaledBitmap(bitmap, size, size, true);
+		}
+		Bitmap bitmap = Bitmap.createBitmap(size, size,
+				Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(bitmap);
+		drawable.setBounds(0, 0, size, size);
+		drawable.draw(canvas);
+		return bitmap;
+	}
+
 	public static Bitmap getBitmapFromDrawable(Resources res, int resId) {
 		return getBitmapFromDrawable(getDrawable(res, resId));
 	}
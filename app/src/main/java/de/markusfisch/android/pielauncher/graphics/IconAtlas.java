@@ -0,0 +1,161 @@
+package de.markusfisch.android.pielauncher.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Packs icons of the same size into a few large bitmaps so drawing
+// the app list doesn't need hundreds of separate bitmaps (and texture
+// uploads). Must only be used from the main thread.
+public class IconAtlas {
+	public class Slot {
+		public final Rect src = new Rect();
+
+		private final Page page;
+
+		private long lastUse;
+
+		private Slot(Page page, int left, int top, int size) {
+			this.page = page;
+			src.set(left, top, left + size, top + size);
+		}
+
+		public long getLastUse() {
+			return lastUse;
+		}
+
+		public void draw(Canvas canvas, Rect dst, Paint paint) {
+			lastUse = ++uses;
+			canvas.drawBitmap(page.bitmap, src, dst, paint);
+		}
+	}
+
+	private static class Page {
+		private final Bitmap bitmap;
+		private final Canvas canvas;
+
+		private Page(int size) {
+			bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+			canvas = new Canvas(bitmap);
+		}
+	}
+
+	// Small enough to not waste much memory for a few apps.
+	private static final int SLOTS_PER_SIDE = 8;
+	// Keep pages below the maximum texture size of older GPUs.
+	private static final int MAX_PAGE_SIZE = 2048;
+	// Transparent border around every slot so neighbors don't bleed
+	// into each other when a slot is drawn scaled.
+	private static final int PADDING = 1;
+
+	private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private final ArrayList<Page> pages = new ArrayList<>();
+	private final ArrayList<Slot> freeSlots = new ArrayList<>();
+
+	private int slotSize;
+	private long uses;
+
+	public int getSlotSize() {
+		return slotSize;
+	}
+
+	// Discards all slots if the size changes.
+	public boolean setSlotSize(int size) {
+		if (size == slotSize) {
+			return false;
+		}
+		clear();
+		slotSize = size;
+		return true;
+	}
+
+	public int getByteCount() {
+		int bytes = 0;
+		for (Page page : pages) {
+			bytes += page.bitmap.getRowBytes() * page.bitmap.getHeight();
+		}
+		return bytes;
+	}
+
+	public int getSlotByteCount() {
+		int cellSize = slotSize + PADDING * 2;
+		return cellSize * cellSize * 4;
+	}
+
+	public Slot add(Bitmap bitmap) {
+		if (slotSize < 1) {
+			return null;
+		}
+		Slot slot = takeSlot();
+		slot.page.canvas.drawBitmap(bitmap, null, slot.src, paint);
+		slot.lastUse = ++uses;
+		return slot;
+	}
+
+	// Moves the slots of the given icons into new pages and drops all
+	// old pages. The slots of all other icons must be discarded.
+	public void compact(List<? extends CanvasPieMenu.CanvasIcon> keep) {
+		pages.clear();
+		freeSlots.clear();
+		for (CanvasPieMenu.CanvasIcon icon : keep) {
+			Slot old = icon.getSlot();
+			if (old == null) {
+				continue;
+			}
+			Slot slot = takeSlot();
+			slot.page.canvas.drawBitmap(old.page.bitmap, old.src, slot.src,
+					null);
+			slot.lastUse = old.lastUse;
+			icon.setSlot(slot);
+		}
+	}
+
+	public void release(Slot slot) {
+		if (slot == null || !pages.contains(slot.page)) {
+			// Slot of a previous size.
+			return;
+		}
+		Canvas canvas = slot.page.canvas;
+		canvas.save();
+		canvas.clipRect(slot.src);
+		canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+		canvas.restore();
+		freeSlots.add(slot);
+	}
+
+	public void clear() {
+		// Don't recycle the pages since they may still be referenced
+		// by a display list.
+		pages.clear();
+		freeSlots.clear();
+	}
+
+	private Slot takeSlot() {
+		if (freeSlots.isEmpty()) {
+			addPage();
+		}
+		return freeSlots.remove(freeSlots.size() - 1);
+	}
+
+	private void addPage() {
+		int cellSize = slotSize + PADDING * 2;
+		int cells = Math.max(1, Math.min(SLOTS_PER_SIDE,
+				MAX_PAGE_SIZE / cellSize));
+		Page page = new Page(cells * cellSize);
+		pages.add(page);
+		// Add in reverse so slots are taken from the top left.
+		for (int y = cells; y-- > 0; ) {
+			for (int x = cells; x-- > 0; ) {
+				freeSlots.add(new Slot(page,
+						x * cellSize + PADDING,
+						y * cellSize + PADDING,
+						slotSize));
+			}
+		}
+	}
+}
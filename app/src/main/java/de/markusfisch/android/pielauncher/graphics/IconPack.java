@@ -106,22 +106,40 @@ public class IconPack {
 		}
 	}
 
-	public final LinkedHashMap<String, Pack> packs = new LinkedHashMap<>();
-	public final LinkedHashMap<String, String> componentToDrawableNames =
-			new LinkedHashMap<>();
+	// The selected pack with everything needed to look up its icons.
+	// Immutable so icons can be loaded on any thread while another
+	// thread selects a pack.
+	private static class Selection {
+		private final Pack pack;
+		private final PackageManager packageManager;
+		private final HashMap<String, String> componentToDrawableNames;
 
-	private final HashMap<String, PackAndDrawable> mappings =
-			new HashMap<>();
+		private Selection(Pack pack, PackageManager packageManager,
+				HashMap<String, String> componentToDrawableNames) {
+			this.pack = pack;
+			this.packageManager = packageManager;
+			this.componentToDrawableNames = componentToDrawableNames;
+		}
+	}
 
-	private PackageManager packageManager;
-	private IconPack.Pack selectedPack;
+	private static final Selection NO_SELECTION =
+			new Selection(null, null, new HashMap<>());
+
+	// Maps are replaced but never modified once they're published.
+	public volatile LinkedHashMap<String, Pack> packs = new LinkedHashMap<>();
+
+	private volatile HashMap<String, PackAndDrawable> mappings =
+			new HashMap<>();
+	private volatile Selection selection = NO_SELECTION;
 
 	public boolean hasPacks() {
 		return !packs.isEmpty();
 	}
 
 	public void restoreMappings(Context context) {
-		IconMappings.restore(context, getSelectedIconPackageName(), mappings);
+		HashMap<String, PackAndDrawable> restored = new HashMap<>();
+		IconMappings.restore(context, getSelectedIconPackageName(), restored);
+		mappings = restored;
 	}
 
 	public void storeMappings(Context context) {
@@ -132,22 +150,27 @@ public class IconPack {
 		return mappings.containsKey(packageName);
 	}
 
-	public void addMapping(String iconPackageName, String packageName,
-			String drawableName) {
-		mappings.put(packageName,
+	public synchronized void addMapping(String iconPackageName,
+			String packageName, String drawableName) {
+		HashMap<String, PackAndDrawable> copy = new HashMap<>(mappings);
+		copy.put(packageName,
 				new PackAndDrawable(iconPackageName, drawableName));
+		mappings = copy;
 	}
 
-	public void removeMapping(String packageName) {
-		mappings.remove(packageName);
+	public synchronized void removeMapping(String packageName) {
+		HashMap<String, PackAndDrawable> copy = new HashMap<>(mappings);
+		copy.remove(packageName);
+		mappings = copy;
 	}
 
-	public void clearMappings() {
-		mappings.clear();
+	public synchronized void clearMappings() {
+		mappings = new HashMap<>();
 	}
 
 	public String getSelectedIconPackageName() {
-		return selectedPack != null ? selectedPack.packageName : null;
+		Pack pack = selection.pack;
+		return pack != null ? pack.packageName : null;
 	}
 
 	public HashMap<String, String> getIconPacks() {
@@ -159,50 +182,36 @@ public class IconPack {
 	}
 
 	public void updatePacks(PackageManager pm) {
-		packs.clear();
-		for (String theme : new String[]{
-				"org.adw.launcher.THEMES",
-				"com.gau.go.launcherex.theme"
-		}) {
-			for (ResolveInfo info : queryIntentActivities(
-					pm, new Intent(theme))) {
-				String packageName = info.activityInfo.packageName;
-				try {
-					packs.put(packageName, new Pack(
-							packageName,
-							pm.getApplicationLabel(getApplicationInfo(
-									pm, packageName)).toString(),
-							pm.getResourcesForApplication(packageName)));
-				} catch (PackageManager.NameNotFoundException e) {
-					// Ignore.
-				}
-			}
-		}
+		packs = queryPacks(pm);
 	}
 
 	public void selectPack(PackageManager pm, String packageName) {
-		selectedPack = null;
-		packageManager = null;
-		componentToDrawableNames.clear();
 		if (pm == null) {
+			selection = NO_SELECTION;
 			return;
 		}
 		// Always update because packs may have been added/removed.
-		updatePacks(pm);
-		if (packageName == null || packageName.isEmpty()) {
-			return;
-		}
-		selectedPack = packs.get(packageName);
-		if (selectedPack == null) {
+		LinkedHashMap<String, Pack> newPacks = queryPacks(pm);
+		packs = newPacks;
+		Pack pack = packageName == null || packageName.isEmpty()
+				? null
+				: newPacks.get(packageName);
+		if (pack == null) {
+			selection = NO_SELECTION;
 			return;
 		}
 		// Always reload packages and drawables as the pack may have
 		// been updated.
-		selectedPack.loadComponentAndDrawableNames(componentToDrawableNames);
-		packageManager = pm;
+		LinkedHashMap<String, String> names = new LinkedHashMap<>();
+		pack.loadComponentAndDrawableNames(names);
+		selection = new Selection(pack, pm, names);
 	}
 
 	public Drawable getIcon(String packageName) {
+		// Read everything once so a concurrent selectPack() can't
+		// mix two selections.
+		Selection selected = selection;
+		Pack selectedPack = selected.pack;
 		String drawableName = null;
 		PackAndDrawable pad = mappings.get(packageName);
 		if (pad != null) {
@@ -220,7 +229,8 @@ public class IconPack {
 			return null;
 		}
 		if (drawableName == null) {
-			Intent intent = packageManager.getLaunchIntentForPackage(packageName);
+			Intent intent = selected.packageManager
+					.getLaunchIntentForPackage(packageName);
 			if (intent == null) {
 				return null;
 			}
@@ -228,12 +238,35 @@ public class IconPack {
 			if (componentName == null) {
 				return null;
 			}
-			drawableName = componentToDrawableNames.get(
+			drawableName = selected.componentToDrawableNames.get(
 					componentName.toString());
 		}
 		return selectedPack.getDrawable(drawableName);
 	}
 
+	private static LinkedHashMap<String, Pack> queryPacks(PackageManager pm) {
+		LinkedHashMap<String, Pack> packs = new LinkedHashMap<>();
+		for (String theme : new String[]{
+				"org.adw.launcher.THEMES",
+				"com.gau.go.launcherex.theme"
+		}) {
+			for (ResolveInfo info : queryIntentActivities(
+					pm, new Intent(theme))) {
+				String packageName = info.activityInfo.packageName;
+				try {
+					packs.put(packageName, new Pack(
+							packageName,
+							pm.getApplicationLabel(getApplicationInfo(
+									pm, packageName)).toString(),
+							pm.getResourcesForApplication(packageName)));
+				} catch (PackageManager.NameNotFoundException e) {
+					// Ignore.
+				}
+			}
+		}
+		return packs;
+	}
+
 	private static List<ResolveInfo> queryIntentActivities(
 			PackageManager pm,
 			Intent intent) {
@@ -14,6 +14,37 @@ public class PieMenu {
 		public int y;
 	}
 
+	// calculate() runs for every frame while the pie is visible, so
+	// trigonometric functions and powers are looked up in tables
+	// and interpolated linearly. This is accurate to far below a pixel.
+	private static final int SIN_TABLE_BITS = 12;
+	private static final int SIN_TABLE_SIZE = 1 << SIN_TABLE_BITS;
+	private static final int SIN_TABLE_MASK = SIN_TABLE_SIZE - 1;
+	private static final double SIN_TABLE_SCALE = SIN_TABLE_SIZE / TAU;
+	private static final double[] SIN_TABLE = new double[SIN_TABLE_SIZE + 1];
+	private static final int POW_TABLE_BITS = 10;
+	private static final int POW_TABLE_SIZE = 1 << POW_TABLE_BITS;
+	private static final int MANTISSA_SHIFT = 52 - POW_TABLE_BITS;
+	private static final long MANTISSA_MASK = (1L << MANTISSA_SHIFT) - 1;
+	private static final double MANTISSA_SCALE = 1.0 / (1L << MANTISSA_SHIFT);
+	// log2(x) for x in [1, 2].
+	private static final double[] LOG2_TABLE =
+			new double[POW_TABLE_SIZE + 1];
+	// 2^x for x in [0, 1].
+	private static final double[] EXP2_TABLE =
+			new double[POW_TABLE_SIZE + 1];
+
+	static {
+		for (int i = 0; i <= SIN_TABLE_SIZE; ++i) {
+			SIN_TABLE[i] = Math.sin(i / SIN_TABLE_SCALE);
+		}
+		for (int i = 0; i <= POW_TABLE_SIZE; ++i) {
+			double f = (double) i / POW_TABLE_SIZE;
+			LOG2_TABLE[i] = Math.log(1 + f) / Math.log(2);
+			EXP2_TABLE[i] = Math.pow(2, f);
+		}
+	}
+
 	public final ArrayList<Icon> icons = new ArrayList<>();
 
 	private int selectedIcon = -1;
@@ -22,6 +53,11 @@ public class PieMenu {
 	private double radius = 0;
 	private double twist = 0;
 	private float iconScale = 0;
+	// Copy of icons so calculate() can iterate a plain array.
+	private Icon[] iconArray = new Icon[0];
+	// Angle of every cell relative to twist for iconArray.length icons.
+	private double[] cellAngles = new double[0];
+	private double cellSize;
 
 	public static double getPositiveAngle(double a) {
 		return (a + TAU + TAU) % TAU;
@@ -35,6 +71,71 @@ public class PieMenu {
 		return d;
 	}
 
+	// Only for non-negative angles.
+	static double sin(double a) {
+		double p = a * SIN_TABLE_SCALE;
+		int i = (int) p;
+		double f = p - i;
+		i &= SIN_TABLE_MASK;
+		double s = SIN_TABLE[i];
+		return s + (SIN_TABLE[i + 1] - s) * f;
+	}
+
+	// Only for non-negative angles.
+	static double cos(double a) {
+		return sin(a + HALF_PI);
+	}
+
+	// Only for a positive exponent.
+	static double pow(double x, double exponent) {
+		if (!(x > 0) || x == Double.POSITIVE_INFINITY) {
+			return Math.pow(x, exponent);
+		}
+		return exp2(exponent * log2(x));
+	}
+
+	private static double log2(double x) {
+		long bits = Double.doubleToRawLongBits(x);
+		int exponent = (int) ((bits >>> 52) & 0x7ff);
+		if (exponent == 0) {
+			// Subnormal, too small to matter.
+			return -1075;
+		}
+		long mantissa = bits & 0xfffffffffffffL;
+		int i = (int) (mantissa >>> MANTISSA_SHIFT);
+		double f = (mantissa & MANTISSA_MASK) * MANTISSA_SCALE;
+		double l = LOG2_TABLE[i];
+		return exponent - 1023 + l + (LOG2_TABLE[i + 1] - l) * f;
+	}
+
+	private static double exp2(double x) {
+		if (x < -1022) {
+			return 0;
+		} else if (x > 1023) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double floor = Math.floor(x);
+		double p = (x - floor) * POW_TABLE_SIZE;
+		int i = (int) p;
+		double f = p - i;
+		double e = EXP2_TABLE[i];
+		return Double.longBitsToDouble(((long) floor + 1023) << 52) *
+				(e + (EXP2_TABLE[i + 1] - e) * f);
+	}
+
+	// Faster than getAngleDifference() for angles that are at most
+	// two turns apart.
+	private static double getAbsAngleDifference(double a, double b) {
+		double d = a - b;
+		while (d > Math.PI) {
+			d -= TAU;
+		}
+		while (d <= -Math.PI) {
+			d += TAU;
+		}
+		return Math.abs(d);
+	}
+
 	public int getSelectedIcon() {
 		return selectedIcon;
 	}
@@ -68,6 +169,21 @@ public class PieMenu {
 		this.twist = getPositiveAngle(twist);
 	}
 
+	// Icons may be added or removed anywhere between two frames, so
+	// the array is filled again every time. Only the number of icons
+	// decides if it needs to be allocated and the angles computed.
+	private Icon[] getIconArray(int numberOfIcons) {
+		if (iconArray.length != numberOfIcons) {
+			iconArray = new Icon[numberOfIcons];
+			cellAngles = new double[numberOfIcons];
+			cellSize = TAU / numberOfIcons;
+			for (int i = 0; i < numberOfIcons; ++i) {
+				cellAngles[i] = i * cellSize;
+			}
+		}
+		return icons.toArray(iconArray);
+	}
+
 	public void calculate(float x, float y) {
 		calculate(x, y, 1f);
 	}
@@ -79,6 +195,7 @@ public class PieMenu {
 		if (numberOfIcons < 1) {
 			return;
 		}
+		Icon[] ics = getIconArray(numberOfIcons);
 
 		// Calculate positions and sizes.
 		int closestIcon = 0;
@@ -89,7 +206,6 @@ public class PieMenu {
 		double centeredY = y - centerY;
 		double centeredX = x - centerX;
 		double cursorAngle = Math.atan2(centeredY, centeredX);
-		double cellSize = TAU / numberOfIcons;
 		double closestAngle = 0;
 		double weight = 0;
 		double maxIconSize = .8f * rad;
@@ -113,13 +229,16 @@ public class PieMenu {
 			// Determine how close every icon is to the cursor.
 			{
 				double closestDistance = TAU;
-				double a = twist;
 				double m = maxIconSize * pixelsPerRadian / cellSize;
 
-				maxWeight = HALF_PI + Math.pow(Math.PI, m);
+				maxWeight = HALF_PI + pow(Math.PI, m);
 
 				for (int i = 0; i < numberOfIcons; ++i) {
-					double d = Math.abs(getAngleDifference(a, cursorAngle));
+					double a = twist + cellAngles[i];
+					if (a > Math.PI) {
+						a -= TAU;
+					}
+					double d = getAbsAngleDifference(a, cursorAngle);
 					if (d < closestDistance) {
 						closestDistance = d;
 						closestIcon = i;
@@ -130,13 +249,9 @@ public class PieMenu {
 						d *= factor;
 					}
 
-					Icon ic = icons.get(i);
-					ic.weight = HALF_PI + Math.pow(Math.PI - d, m);
+					Icon ic = ics[i];
+					ic.weight = HALF_PI + pow(Math.PI - d, m);
 					weight += ic.weight;
-
-					if ((a += cellSize) > Math.PI) {
-						a -= TAU;
-					}
 				}
 
 				if (!cursorNearCenter) {
@@ -151,7 +266,7 @@ public class PieMenu {
 			double maxSize = sizeUnit * maxWeight;
 			double f = Math.min(1f, maxIconSize / maxSize) * iconScale;
 			for (int i = numberOfIcons; i-- > 0; ) {
-				Icon ic = icons.get(i);
+				Icon ic = ics[i];
 				ic.cellSize = sizeUnit * ic.weight;
 				// Scale icons within cell.
 				ic.size = ic.cellSize * f;
@@ -160,28 +275,24 @@ public class PieMenu {
 
 		// Calculate icon positions.
 		{
+			Icon closest = ics[closestIcon];
 			double difference = getAngleDifference(cursorAngle, closestAngle);
 			double angle = getPositiveAngle(cursorAngle -
-					(pixelsPerRadian * icons.get(closestIcon).cellSize) /
+					(pixelsPerRadian * closest.cellSize) /
 							cellSize * difference);
 
 			// Calculate active icon.
-			{
-				Icon ic = icons.get(closestIcon);
-				ic.x = centerX + (int) Math.round(
-						rad * Math.cos(angle));
-				ic.y = centerY + (int) Math.round(
-						rad * Math.sin(angle));
-			}
+			closest.x = centerX + (int) Math.round(rad * cos(angle));
+			closest.y = centerY + (int) Math.round(rad * sin(angle));
 
 			// Calculate positions of all other icons.
 			{
 				double leftAngle = angle;
 				double rightAngle = angle;
+				double previousLeftCellSize = closest.cellSize;
+				double previousRightCellSize = closest.cellSize;
 				int left = closestIcon;
 				int right = closestIcon;
-				int previousRight = closestIcon;
-				int previousLeft = closestIcon;
 
 				for (; ; ) {
 					if ((--left) < 0) {
@@ -197,35 +308,35 @@ public class PieMenu {
 						right = 0;
 					}
 
-					Icon lic = icons.get(left);
+					Icon lic = ics[left];
 
 					leftAngle = getPositiveAngle(leftAngle -
-							(.5f * icons.get(previousLeft).cellSize +
+							(.5f * previousLeftCellSize +
 									.5f * lic.cellSize) * pixelsPerRadian);
 
 					lic.x = centerX + (int) Math.round(
-							rad * Math.cos(leftAngle));
+							rad * cos(leftAngle));
 					lic.y = centerY + (int) Math.round(
-							rad * Math.sin(leftAngle));
+							rad * sin(leftAngle));
 
 					// Break here when number of icons is even.
 					if (left == right) {
 						break;
 					}
 
-					Icon ric = icons.get(right);
+					Icon ric = ics[right];
 
 					rightAngle = getPositiveAngle(rightAngle +
-							(.5f * icons.get(previousRight).cellSize +
+							(.5f * previousRightCellSize +
 									.5f * ric.cellSize) * pixelsPerRadian);
 
 					ric.x = centerX + (int) Math.round(
-							rad * Math.cos(rightAngle));
+							rad * cos(rightAngle));
 					ric.y = centerY + (int) Math.round(
-							rad * Math.sin(rightAngle));
+							rad * sin(rightAngle));
 
-					previousRight = right;
-					previousLeft = left;
+					previousLeftCellSize = lic.cellSize;
+					previousRightCellSize = ric.cellSize;
 				}
 			}
 		}
@@ -0,0 +1,231 @@
+package de.markusfisch.android.pielauncher.io;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import de.markusfisch.android.pielauncher.content.AppMenu;
+import de.markusfisch.android.pielauncher.content.LauncherItemKey;
+
+public class AppIndexCache {
+	public static class Entry {
+		public final LauncherItemKey key;
+		public final String label;
+		public final long lastUpdateTime;
+
+		private Entry(LauncherItemKey key, String label,
+				long lastUpdateTime) {
+			this.key = key;
+			this.label = label;
+			this.lastUpdateTime = lastUpdateTime;
+		}
+	}
+
+	// Increment when the file format changes.
+	private static final int VERSION = 3;
+	private static final String INDEX_FILE = "index";
+	private static final String INDEX_FILE_TMP = "index.tmp";
+	private static final String ICONS_DIR = "icons";
+
+	// Incremented whenever the icons are cleared so an icon that was
+	// rasterized before isn't written after that.
+	private static int epoch;
+
+	// Returns no entries if signature doesn't match and clears the
+	// icons too if iconSignature doesn't match.
+	public static synchronized List<Entry> restore(Context context,
+			String signature, String iconSignature) {
+		ArrayList<Entry> entries = new ArrayList<>();
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					context.openFileInput(INDEX_FILE)));
+			if (in.readInt() != VERSION ||
+					!iconSignature.equals(in.readUTF())) {
+				// Icons would be wrong for this configuration.
+				clearIcons(context);
+				return entries;
+			}
+			if (!signature.equals(in.readUTF())) {
+				// Labels would be wrong, but the icons are still fine.
+				return entries;
+			}
+			for (int i = in.readInt(); i > 0; --i) {
+				String flattened = in.readUTF();
+				String label = in.readUTF();
+				long lastUpdateTime = in.readLong();
+				LauncherItemKey key = LauncherItemKey.unflattenFromString(
+						context, flattened);
+				if (key.componentName != null) {
+					// Icons are only loaded when they're needed.
+					entries.add(new Entry(key, label, lastUpdateTime));
+				}
+			}
+		} catch (FileNotFoundException e) {
+			// Return an empty array.
+		} catch (IOException e) {
+			// Return what could be read so far.
+		} finally {
+			close(in);
+		}
+		return entries;
+	}
+
+	public static synchronized void store(Context context, String signature,
+			String iconSignature, Collection<AppMenu.AppIcon> apps,
+			int pieIconSize, int listIconSize) {
+		File iconsDir = getIconsDir(context);
+		HashSet<String> stale = new HashSet<>();
+		String[] existing = iconsDir.list();
+		if (existing != null) {
+			for (String name : existing) {
+				stale.add(name);
+			}
+		}
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					context.openFileOutput(INDEX_FILE_TMP,
+							Context.MODE_PRIVATE)));
+			out.writeInt(VERSION);
+			out.writeUTF(iconSignature);
+			out.writeUTF(signature);
+			out.writeInt(apps.size());
+			for (AppMenu.AppIcon appIcon : apps) {
+				String flattened = LauncherItemKey.flattenToString(context,
+						appIcon.componentName, appIcon.userHandle);
+				// Icon files are written by storeIcon().
+				stale.remove(getIconFileName(flattened,
+						appIcon.lastUpdateTime, pieIconSize));
+				stale.remove(getIconFileName(flattened,
+						appIcon.lastUpdateTime, listIconSize));
+				out.writeUTF(flattened);
+				out.writeUTF(appIcon.label);
+				out.writeLong(appIcon.lastUpdateTime);
+			}
+			out.close();
+			out = null;
+			if (!context.getFileStreamPath(INDEX_FILE_TMP).renameTo(
+					context.getFileStreamPath(INDEX_FILE))) {
+				context.deleteFile(INDEX_FILE_TMP);
+			}
+		} catch (IOException e) {
+			context.deleteFile(INDEX_FILE_TMP);
+		} finally {
+			close(out);
+		}
+		for (String name : stale) {
+			new File(iconsDir, name).delete();
+		}
+	}
+
+	public static Bitmap restoreIcon(Context context,
+			AppMenu.AppIcon appIcon, int iconSize) {
+		if (appIcon.lastUpdateTime == 0) {
+			// Can't tell if the file is still valid.
+			return null;
+		}
+		File file = new File(getIconsDir(context), getIconFileName(
+				context, appIcon, iconSize));
+		return file.exists()
+				? BitmapFactory.decodeFile(file.getPath())
+				: null;
+	}
+
+	// Returns false if the icons were cleared since getEpoch() was
+	// called because the bitmap may be outdated then.
+	public static synchronized boolean storeIcon(Context context,
+			AppMenu.AppIcon appIcon, int iconSize, Bitmap bitmap,
+			int iconEpoch) {
+		return iconEpoch == epoch && appIcon.lastUpdateTime != 0 &&
+				writeIcon(getIconsDir(context),
+				getIconFileName(context, appIcon, iconSize), bitmap);
+	}
+
+	public static synchronized int getEpoch() {
+		return epoch;
+	}
+
+	// Must be called whenever something changes that changes the
+	// rasterized icons.
+	public static synchronized void clearIcons(Context context) {
+		++epoch;
+		File iconsDir = getIconsDir(context);
+		String[] names = iconsDir.list();
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			new File(iconsDir, name).delete();
+		}
+	}
+
+	private static boolean writeIcon(File iconsDir, String name,
+			Bitmap bitmap) {
+		if (!iconsDir.isDirectory() && !iconsDir.mkdirs()) {
+			return false;
+		}
+		File file = new File(iconsDir, name);
+		if (!writeIcon(file, bitmap)) {
+			// Don't leave a broken file behind.
+			file.delete();
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean writeIcon(File file, Bitmap bitmap) {
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			return bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+		} catch (IOException e) {
+			return false;
+		} finally {
+			close(out);
+		}
+	}
+
+	private static File getIconsDir(Context context) {
+		return new File(context.getFilesDir(), ICONS_DIR);
+	}
+
+	private static String getIconFileName(Context context,
+			AppMenu.AppIcon appIcon, int iconSize) {
+		return getIconFileName(LauncherItemKey.flattenToString(context,
+				appIcon.componentName, appIcon.userHandle),
+				appIcon.lastUpdateTime, iconSize);
+	}
+
+	private static String getIconFileName(String flattened,
+			long lastUpdateTime, int iconSize) {
+		// Component names cannot contain "-" but may contain "/" and "#".
+		// Icons of other sizes are removed by store().
+		return flattened.replace('/', '_').replace('#', '@') +
+				"-" + lastUpdateTime + "-" + iconSize + ".png";
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Ignore.
+			}
+		}
+	}
+}
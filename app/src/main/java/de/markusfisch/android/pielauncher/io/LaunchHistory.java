@@ -0,0 +1,197 @@
+package de.markusfisch.android.pielauncher.io;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.UserHandle;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.markusfisch.android.pielauncher.app.PieLauncherApp;
+import de.markusfisch.android.pielauncher.content.LauncherItemKey;
+import de.markusfisch.android.pielauncher.os.BackgroundScheduler;
+
+// Counts app launches with exponential decay so recent launches weigh
+// more. Launches are appended to a log that is compacted into one
+// counter per app once it gets too long.
+//
+// Counters are kept as rank = log2(count) + time / HALF_LIFE, which
+// orders apps by their decayed count without knowing the current time.
+public class LaunchHistory {
+	private static final String HISTORY_FILE = "launch_history";
+	private static final String HISTORY_FILE_TMP = "launch_history.tmp";
+	private static final String LOG_FILE = "launch_log";
+	private static final long HALF_LIFE = 7L * 24L * 60L * 60L * 1000L;
+	private static final int MAX_LOG_LINES = 256;
+	// Counters that have decayed below this are dropped on compaction.
+	private static final double MIN_COUNT = 0.01;
+
+	private final ConcurrentHashMap<LauncherItemKey, Double> ranks =
+			new ConcurrentHashMap<>();
+
+	private volatile int generation = 0;
+	private boolean restored = false;
+	private int logLines = 0;
+
+	// Changes whenever the ranks change.
+	public int getGeneration() {
+		return generation;
+	}
+
+	public boolean isEmpty() {
+		return ranks.isEmpty();
+	}
+
+	// Returns negative infinity for apps that were never launched.
+	public double getRank(ComponentName componentName,
+			UserHandle userHandle) {
+		Double rank = ranks.get(new LauncherItemKey(componentName,
+				userHandle));
+		return rank == null ? Double.NEGATIVE_INFINITY : rank;
+	}
+
+	// Returns immediately, the file is written on a worker thread.
+	public void addLaunch(Context context, ComponentName componentName,
+			UserHandle userHandle) {
+		long now = System.currentTimeMillis();
+		LauncherItemKey key = new LauncherItemKey(componentName, userHandle);
+		PieLauncherApp.scheduler.execute(
+				BackgroundScheduler.PRIORITY_INDEX, () -> {
+			synchronized (this) {
+				restore(context);
+				add(key, now);
+				appendLog(context, now, key);
+				if (logLines > MAX_LOG_LINES) {
+					compact(context);
+				}
+			}
+		});
+	}
+
+	// Must not be called on the main thread.
+	public synchronized void restore(Context context) {
+		if (restored) {
+			return;
+		}
+		ranks.clear();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					context.openFileInput(HISTORY_FILE)));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int sep = line.indexOf(' ');
+				LauncherItemKey key;
+				if (sep < 0 || (key = unflatten(context,
+						line.substring(sep + 1))) == null) {
+					continue;
+				}
+				try {
+					ranks.put(key, Double.parseDouble(
+							line.substring(0, sep)));
+				} catch (NumberFormatException e) {
+					// Skip invalid line.
+				}
+			}
+			reader.close();
+		} catch (FileNotFoundException e) {
+			// Nothing launched yet.
+		} catch (IOException e) {
+			// Start over.
+		}
+		logLines = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					context.openFileInput(LOG_FILE)));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				++logLines;
+				int sep = line.indexOf(' ');
+				LauncherItemKey key;
+				if (sep < 0 || (key = unflatten(context,
+						line.substring(sep + 1))) == null) {
+					continue;
+				}
+				try {
+					add(key, Long.parseLong(line.substring(0, sep)));
+				} catch (NumberFormatException e) {
+					// Skip invalid line.
+				}
+			}
+			reader.close();
+		} catch (FileNotFoundException e) {
+			// Nothing launched since the last compaction.
+		} catch (IOException e) {
+			// Use what could be read.
+		}
+		restored = true;
+		++generation;
+	}
+
+	private void add(LauncherItemKey key, long time) {
+		double now = (double) time / HALF_LIFE;
+		Double rank = ranks.get(key);
+		double count = rank == null ? 0 : Math.pow(2, rank - now);
+		ranks.put(key, now + Math.log(count + 1) / Math.log(2));
+		++generation;
+	}
+
+	private void appendLog(Context context, long time, LauncherItemKey key) {
+		try {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+					context.openFileOutput(LOG_FILE, Context.MODE_APPEND)));
+			writer.write(time + " " + LauncherItemKey.flattenToString(
+					context, key.componentName, key.userHandle));
+			writer.newLine();
+			writer.close();
+			++logLines;
+		} catch (IOException e) {
+			// Ignore.
+		}
+	}
+
+	private void compact(Context context) {
+		double minRank = (double) System.currentTimeMillis() / HALF_LIFE +
+				Math.log(MIN_COUNT) / Math.log(2);
+		try {
+			// Written to a temporary file first so the history isn't
+			// lost if this is interrupted.
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+					context.openFileOutput(HISTORY_FILE_TMP,
+							Context.MODE_PRIVATE)));
+			for (Map.Entry<LauncherItemKey, Double> entry : ranks.entrySet()) {
+				double rank = entry.getValue();
+				if (rank < minRank) {
+					ranks.remove(entry.getKey());
+					continue;
+				}
+				LauncherItemKey key = entry.getKey();
+				writer.write(rank + " " + LauncherItemKey.flattenToString(
+						context, key.componentName, key.userHandle));
+				writer.newLine();
+			}
+			writer.close();
+		} catch (IOException e) {
+			// Keep the log so nothing gets lost.
+			context.deleteFile(HISTORY_FILE_TMP);
+			return;
+		}
+		if (!context.getFileStreamPath(HISTORY_FILE_TMP).renameTo(
+				context.getFileStreamPath(HISTORY_FILE))) {
+			context.deleteFile(HISTORY_FILE_TMP);
+			return;
+		}
+		context.deleteFile(LOG_FILE);
+		logLines = 0;
+	}
+
+	private static LauncherItemKey unflatten(Context context, String s) {
+		LauncherItemKey key = LauncherItemKey.unflattenFromString(context, s);
+		return key.componentName != null ? key : null;
+	}
+}
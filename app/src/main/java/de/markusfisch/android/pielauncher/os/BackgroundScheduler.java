@@ -0,0 +1,187 @@
+package de.markusfisch.android.pielauncher.os;
+
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BackgroundScheduler {
+	public interface IndexedTask {
+		void run(int index);
+	}
+
+	// Higher values run first.
+	public static final int PRIORITY_PREVIEW = 0;
+	public static final int PRIORITY_INDEX = 1;
+	public static final int PRIORITY_ICON = 2;
+	public static final int PRIORITY_SEARCH = 3;
+
+	private static final long KEEP_ALIVE_SECONDS = 10;
+
+	private final HashMap<Object, ArrayList<Task>> tagged = new HashMap<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final ThreadPoolExecutor executor;
+	private final int workers;
+
+	public BackgroundScheduler() {
+		// Leave one core for the UI thread but have at least two workers
+		// so preview work can run while apps are indexed.
+		workers = Math.max(2, Math.min(4,
+				Runtime.getRuntime().availableProcessors() - 1));
+		// With an unbounded queue, ThreadPoolExecutor never starts more
+		// than corePoolSize threads, so core and maximum are the same.
+		executor = new ThreadPoolExecutor(workers, workers,
+				KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<>(),
+				runnable -> new Thread(() -> {
+					Process.setThreadPriority(
+							Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}, "BackgroundScheduler"));
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public void execute(int priority, Runnable runnable) {
+		execute(priority, null, runnable);
+	}
+
+	public void execute(int priority, Object tag, Runnable runnable) {
+		Task task = new Task(priority, sequence.getAndIncrement(), tag,
+				runnable);
+		if (tag != null) {
+			synchronized (tagged) {
+				ArrayList<Task> tasks = tagged.get(tag);
+				if (tasks == null) {
+					tasks = new ArrayList<>();
+					tagged.put(tag, tasks);
+				}
+				tasks.add(task);
+			}
+		}
+		executor.execute(task);
+	}
+
+	// Runs task for every index in [0, count) on the calling thread
+	// and on idle workers and returns when all indices are done.
+	// Indices are only claimed by threads that are already running,
+	// so this never waits for a helper that didn't get a worker.
+	public void runParallel(int priority, int count, IndexedTask task) {
+		if (count < 1) {
+			return;
+		}
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		Runnable drain = () -> {
+			int i;
+			while ((i = next.getAndIncrement()) < count) {
+				try {
+					task.run(i);
+				} finally {
+					if (done.incrementAndGet() == count) {
+						synchronized (done) {
+							done.notifyAll();
+						}
+					}
+				}
+			}
+		};
+		// The calling thread is the first worker. Always leave one
+		// worker free so tasks of higher priority, like searching,
+		// don't have to wait for this.
+		for (int i = Math.min(workers - 2, count - 1); i > 0; --i) {
+			execute(priority, drain);
+		}
+		drain.run();
+		synchronized (done) {
+			while (done.get() < count) {
+				try {
+					done.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	// Removes pending tasks with this tag. Tasks that are already
+	// running are not interrupted and must be safe to finish.
+	public void cancel(Object tag) {
+		ArrayList<Task> tasks;
+		synchronized (tagged) {
+			tasks = tagged.remove(tag);
+		}
+		if (tasks == null) {
+			return;
+		}
+		for (Task task : tasks) {
+			task.cancel(false);
+			executor.remove(task);
+		}
+	}
+
+	private void remove(Task task) {
+		synchronized (tagged) {
+			ArrayList<Task> tasks = tagged.get(task.tag);
+			if (tasks != null && tasks.remove(task) && tasks.isEmpty()) {
+				tagged.remove(task.tag);
+			}
+		}
+	}
+
+	private final class Task extends FutureTask<Void>
+			implements Comparable<Task> {
+		private final int priority;
+		private final long sequence;
+		private final Object tag;
+
+		private Task(int priority, long sequence, Object tag,
+				Runnable runnable) {
+			super(runnable, null);
+			this.priority = priority;
+			this.sequence = sequence;
+			this.tag = tag;
+		}
+
+		@Override
+		public int compareTo(Task other) {
+			if (priority != other.priority) {
+				return priority > other.priority ? -1 : 1;
+			}
+			// Keep tasks of the same priority in submission order.
+			return sequence < other.sequence ? -1 :
+					(sequence == other.sequence ? 0 : 1);
+		}
+
+		@Override
+		protected void done() {
+			if (tag != null) {
+				remove(this);
+			}
+			if (isCancelled()) {
+				return;
+			}
+			// FutureTask keeps exceptions to itself, so report them
+			// like a plain Runnable would have.
+			try {
+				get();
+			} catch (ExecutionException e) {
+				Thread thread = Thread.currentThread();
+				Thread.UncaughtExceptionHandler handler =
+						thread.getUncaughtExceptionHandler();
+				if (handler != null) {
+					handler.uncaughtException(thread, e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
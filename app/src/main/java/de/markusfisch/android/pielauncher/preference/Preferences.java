@@ -20,8 +20,14 @@ public class Preferences {
 	public static final int SEARCH_STRICTNESS_HAMMING = 1;
 	public static final int SEARCH_STRICTNESS_CONTAINS = 2;
 	public static final int SEARCH_STRICTNESS_STARTS_WITH = 3;
+	public static final int SEARCH_STRICTNESS_FUZZY = 4;
+	public static final int SEARCH_STRICTNESS_INITIALS = 5;
+	public static final int SEARCH_STRICTNESS_T9 = 6;
 	public static final int SEARCH_PARAMETER_APP_LABEL = 0;
 	public static final int SEARCH_PARAMETER_PACKAGE_NAME = 1;
+	public static final int SEARCH_PARAMETER_BOTH = 2;
+	public static final int LIST_ORDER_NAME = 0;
+	public static final int LIST_ORDER_USAGE = 1;
 	public static final int SHOW_APP_NAMES_ALWAYS = 0;
 	public static final int SHOW_APP_NAMES_SEARCH = 1;
 	public static final int SHOW_APP_NAMES_NEVER = 2;
@@ -53,6 +59,7 @@ public class Preferences {
 	private static final String AUTO_LAUNCH_MATCHING = "auto_launch_matching";
 	private static final String SEARCH_STRICTNESS = "strictness";
 	private static final String SEARCH_PARAMETER = "search_parameter";
+	private static final String LIST_ORDER = "list_order";
 	private static final String SHOW_APP_NAMES = "show_app_names";
 	private static final String ICON_PRESS = "icon_press";
 	private static final String ICON_PACK = "icon_pack";
@@ -79,6 +86,7 @@ public class Preferences {
 	private boolean autoLaunchMatching = false;
 	private int searchStrictness = SEARCH_STRICTNESS_HAMMING;
 	private int searchParameter = SEARCH_PARAMETER_APP_LABEL;
+	private int listOrder = LIST_ORDER_NAME;
 	private int showAppNames = SHOW_APP_NAMES_SEARCH;
 	private int iconPress = ICON_PRESS_DEFAULT;
 	private String iconPack;
@@ -124,6 +132,7 @@ public class Preferences {
 				searchStrictness);
 		searchParameter = preferences.getInt(SEARCH_PARAMETER,
 				searchParameter);
+		listOrder = preferences.getInt(LIST_ORDER, listOrder);
 		showAppNames = preferences.getInt(SHOW_APP_NAMES, showAppNames);
 		iconPress = preferences.getInt(ICON_PRESS, iconPress);
 		iconPack = preferences.getString(ICON_PACK, iconPack);
@@ -276,6 +285,15 @@ public class Preferences {
 		put(SEARCH_PARAMETER, searchParameter).apply();
 	}
 
+	public int getListOrder() {
+		return listOrder;
+	}
+
+	public void setListOrder(int listOrder) {
+		this.listOrder = listOrder;
+		put(LIST_ORDER, listOrder).apply();
+	}
+
 	public int showAppNames() {
 		return showAppNames;
 	}
@@ -24,6 +24,9 @@ public class ConfigurationChangedReceiver extends BroadcastReceiver {
 		}
 		String action = intent.getAction();
 		if (Intent.ACTION_LOCALE_CHANGED.equals(action)) {
+			// Search keys are ready long before the apps are indexed
+			// again for their translated labels.
+			PieLauncherApp.appMenu.updateSearchIndexAsync();
 			PieLauncherApp.appMenu.indexAppsAsync(context);
 		} else if (Intent.ACTION_CONFIGURATION_CHANGED.equals(action)) {
 			// Only index on color changes. `ACTION_CONFIGURATION_CHANGED`
@@ -40,7 +43,7 @@ public class ConfigurationChangedReceiver extends BroadcastReceiver {
 		}
 	}
 
-	private int getPrimaryColor(Context context) {
+	public static int getPrimaryColor(Context context) {
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
 			TypedValue typedValue = new TypedValue();
 			context.getTheme().resolveAttribute(
@@ -37,6 +37,7 @@ import de.markusfisch.android.pielauncher.content.AppMenu;
 import de.markusfisch.android.pielauncher.graphics.BackgroundBlur;
 import de.markusfisch.android.pielauncher.graphics.CanvasPieMenu;
 import de.markusfisch.android.pielauncher.graphics.Converter;
+import de.markusfisch.android.pielauncher.graphics.IconAtlas;
 import de.markusfisch.android.pielauncher.graphics.PieMenu;
 import de.markusfisch.android.pielauncher.graphics.Ripple;
 import de.markusfisch.android.pielauncher.preference.Preferences;
@@ -72,6 +73,7 @@ public class AppPieView extends View {
     private final ArrayList<AppMenu.Icon> backup = new ArrayList<>();
     private final ArrayList<AppMenu.Icon> ungrabbedIcons = new ArrayList<>();
     private final Paint paintList = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint paintPlaceholder = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint paintDropZone = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint paintPressed = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint paintAction = new Paint(Paint.FILTER_BITMAP_FLAG);
@@ -79,6 +81,7 @@ public class AppPieView extends View {
     private final Point touch = new Point();
     private final Ripple ripple = Ripple.newFadingRipple();
     private final Rect drawRect = new Rect();
+    private final LabelCache labelCache = new LabelCache();
     private final Rect iconStartRect = new Rect();
     private final Rect iconCenterRect = new Rect();
     private final Rect iconEndRect = new Rect();
@@ -112,11 +115,13 @@ public class AppPieView extends View {
     private final int translucentBackgroundColor;
     private final int alphaDropZone;
     private final int alphaPressed;
+    private final int alphaPlaceholder;
     private final int alphaText;
     private final float dp;
     private final float textHeight;
     private final float textOffset;
     private final float touchSlopSq;
+    private final ListLayout listLayout;
 
     private Window window;
     private Runnable rippleRunnable;
@@ -137,7 +142,6 @@ public class AppPieView extends View {
     private float minIconScale;
     private float iconScale;
     private float dragOffset;
-    private int maxScrollY;
     private int lastScrollY;
     private int lastInsertAt;
     private int lastSelectedIcon;
@@ -188,6 +192,8 @@ public class AppPieView extends View {
         paintPressed.setColor(res.getColor(R.color.bg_action_pressed));
         paintPressed.setStyle(Paint.Style.FILL);
         alphaPressed = paintPressed.getAlpha();
+        paintPlaceholder.setColor(CanvasPieMenu.PLACEHOLDER_COLOR);
+        alphaPlaceholder = paintPlaceholder.getAlpha();
 
         paintText.setColor(res.getColor(R.color.text_color));
         alphaText = paintText.getAlpha();
@@ -195,6 +201,10 @@ public class AppPieView extends View {
         paintText.setTextSize(14f * sp);
         textHeight = paintText.descent() - paintText.ascent();
         textOffset = (textHeight / 2) - paintText.descent();
+        listLayout = new ListLayout(listPadding,
+                listPadding + searchInputHeight,
+                iconSize, iconTextPadding, spaceBetween,
+                textHeight, textOffset);
         translucentBackgroundColor = res.getColor(R.color.bg_ui);
 
         iconAdd = Converter.getBitmapFromDrawable(res, R.drawable.ic_add);
@@ -220,6 +230,7 @@ public class AppPieView extends View {
                         ? 2L : 1L);
         doubleTapTimeout = ViewConfiguration.getDoubleTapTimeout();
 
+        PieLauncherApp.appMenu.setIconListener(this::invalidate);
         if (PieLauncherApp.appMenu.isEmpty()) {
             PieLauncherApp.appMenu.indexAppsAsync(context);
         }
@@ -303,18 +314,30 @@ public class AppPieView extends View {
     }
 
     public void filterAppList(String query) {
-        List<AppMenu.AppIcon> newAppList =
-                PieLauncherApp.appMenu.filterAppsBy(getContext(), query);
-        if (newAppList != null) {
-            appList = newAppList;
-        }
-        appListIsFiltered = !TextUtils.isEmpty(query);
-        selectedApp = prefs.doubleSpaceLaunch()
-                ? (appListIsFiltered ? 0 : -1)
-                : getSelectedAppFromTrailingSpace(query);
-        scrollList(0, false);
-        lastScrollY = 0;
-        invalidate();
+        filterAppList(query, null);
+    }
+
+    // onFiltered runs when the list shows the result for query, which
+    // may be later if there are many apps. It doesn't run at all if
+    // filterAppList() is called again in the meantime.
+    public void filterAppList(String query, Runnable onFiltered) {
+        PieLauncherApp.appMenu.filterAppsByAsync(getContext(), query,
+                (newAppList) -> {
+                    if (newAppList != null) {
+                        appList = newAppList;
+                    }
+                    appListIsFiltered = !TextUtils.isEmpty(query);
+                    updateListLayout();
+                    selectedApp = prefs.doubleSpaceLaunch()
+                            ? (appListIsFiltered ? 0 : -1)
+                            : getSelectedAppFromTrailingSpace(query);
+                    scrollList(0, false);
+                    lastScrollY = 0;
+                    invalidate();
+                    if (onFiltered != null) {
+                        onFiltered.run();
+                    }
+                });
     }
 
     public void launchSelectedApp() {
@@ -390,7 +413,7 @@ public class AppPieView extends View {
 
     @Override
     protected int computeVerticalScrollRange() {
-        return maxScrollY + getHeight();
+        return getMaxScrollY() + getHeight();
     }
 
     @Override
@@ -591,6 +614,7 @@ public class AppPieView extends View {
                 }
                 int y = Math.round(event.getY(index));
                 int scrollY = scrollOffset + (tr.scrollRef - y);
+                int maxScrollY = getMaxScrollY();
                 lastScrollY = clamp(scrollY, 0, maxScrollY);
                 scrollList(lastScrollY, true);
                 if (lastScrollY == 0 || lastScrollY == maxScrollY) {
@@ -826,6 +850,8 @@ public class AppPieView extends View {
         updateChangeTwistIcon();
         updateChangeIconScaleIcon();
         updateChangeRadiusIcon();
+        updateIconSizes();
+        updateListLayout();
 
         int pieBottom = viewMax / 2 + maxRadius;
         controlsPadding = (viewMax - pieBottom) / 2;
@@ -1078,14 +1104,10 @@ public class AppPieView extends View {
     }
 
     private AppMenu.AppIcon getListIconAt(int x, int y) {
-        y += getScrollY();
-        for (int i = 0, l = getIconCount(); i < l; ++i) {
-            AppMenu.AppIcon appIcon = appList.get(i);
-            if (appIcon.hitRect.contains(x, y)) {
-                return appIcon;
-            }
-        }
-        return null;
+        updateListOffset();
+        int index = listLayout.getIndexAt(x, y + getScrollY(),
+                getIconCount());
+        return index > -1 ? appList.get(index) : null;
     }
 
     private boolean performEditAction(Context context) {
@@ -1099,6 +1121,7 @@ public class AppPieView extends View {
                 contains(iconChangeIconScaleRect, touch)) {
             iconScale = iconScale < 1f ? 1f : minIconScale;
             updateChangeIconScaleIcon();
+            updateIconSizes();
             ripple.set(touch);
             return true;
         } else if (grabbedIcon == null &&
@@ -1106,6 +1129,7 @@ public class AppPieView extends View {
             radius = getNextRadius(radius);
             PieLauncherApp.appMenu.setRadius(radius);
             updateChangeRadiusIcon();
+            updateIconSizes();
             ripple.set(touch);
             return true;
         } else if (contains(iconStartRect, touch)) {
@@ -1233,6 +1257,13 @@ public class AppPieView extends View {
         return 3;
     }
 
+    private void updateIconSizes() {
+        // PieMenu.calculate() never draws an icon larger than
+        // radius * iconScale (.8 * 1.25 * radius while opening).
+        PieLauncherApp.appMenu.setIconSizes(iconSize,
+                Math.round(radius * iconScale));
+    }
+
     private void updateChangeIconScaleIcon() {
         iconChangeIconScale = Converter.getBitmapFromDrawable(getResources(),
                 getDrawableForIconScale(iconScale));
@@ -1344,37 +1375,28 @@ public class AppPieView extends View {
         float af = Math.min(f, 1f - Math.min(1f,
                 dragOffset / (viewHeight * .5f)));
         paintList.setAlpha(Math.round(af * 255f));
+        paintPlaceholder.setAlpha(Math.round(af * alphaPlaceholder));
         paintText.setAlpha(Math.round(af * alphaText));
         // Manually draw an icon grid because GridView doesn't perform too
         // well on low-end devices and doing it manually gives us more control.
-        int innerWidth = viewWidth - listPadding * 2;
-        int columns = Math.min(5, innerWidth / (iconSize + spaceBetween));
+        updateListLayout();
         boolean showAppNames = showAppNames();
-        int iconAndTextHeight = iconSize + (showAppNames
-                ? iconTextPadding + Math.round(textHeight)
-                : 0);
-        int cellWidth = innerWidth / columns;
-        int cellHeight = iconAndTextHeight + iconTextPadding * 2;
-        int maxTextWidth = cellWidth - iconTextPadding;
-        int hpad = (cellWidth - iconSize) / 2;
-        int vpad = (cellHeight - iconAndTextHeight) / 2;
-        int labelX = cellWidth >> 1;
-        int labelY = cellHeight - vpad - Math.round(textOffset);
+        int columns = listLayout.columns;
+        int cellWidth = listLayout.cellWidth;
+        int cellHeight = listLayout.cellHeight;
+        int maxTextWidth = listLayout.maxTextWidth;
+        int hpad = listLayout.iconX;
+        int vpad = listLayout.iconY;
+        int labelX = listLayout.labelX;
+        int labelY = listLayout.labelY;
         int scrollY = getScrollY();
-        int bottomPadding = getPaddingBottom();
-        int viewHeightMinusPadding = viewHeight - bottomPadding;
-        int viewTop = scrollY - cellHeight;
-        int viewBottom = scrollY + viewHeight;
-        int x = listPadding;
-        int y = listPadding + searchInputHeight +
-                Math.round((1f - f) * viewHeight * .25f) +
-                Math.round(dragOffset);
-        int wrapX = listPadding + cellWidth * columns;
+        updateListOffset(f);
+        int top = listLayout.getTop();
         int size = getIconCount();
         if (selectedApp > -1 && size > 0) {
             int offset = Math.min(selectedApp, size - 1);
-            int ix = x + offset % columns * cellWidth;
-            int iy = y + offset / columns * cellHeight;
+            int ix = listLayout.getLeft(offset);
+            int iy = listLayout.getTop(offset);
             canvas.drawBitmap(iconLaunchFirst,
                     ix + labelX - iconLaunchFirstHalf,
                     iy - listPadding,
@@ -1395,34 +1417,66 @@ public class AppPieView extends View {
                 magSize = 0;
             }
         }
-        for (int i = 0; i < size; ++i) {
-            if (y > viewTop && y < viewBottom) {
+        // Only visit the rows that are (partially) on screen so the
+        // cost per frame doesn't grow with the number of apps.
+        int firstRow = listLayout.getFirstVisibleRow(scrollY);
+        int lastRow = listLayout.getLastVisibleRow(scrollY, viewHeight, size);
+        for (int row = firstRow; row <= lastRow; ++row) {
+            int y = top + row * cellHeight;
+            int x = listPadding;
+            for (int i = row * columns, end = Math.min(size, i + columns);
+                    i < end; ++i, x += cellWidth) {
                 AppMenu.AppIcon appIcon = appList.get(i);
-                appIcon.hitRect.set(x, y, x + cellWidth, y + cellHeight);
                 int ix = x + hpad;
                 int iy = y + vpad;
                 int mag = appIcon == highlightedIcon ? magSize : 0;
                 drawRect.set(ix - mag, iy - mag,
                         ix + iconSize + mag, iy + iconSize + mag);
-                canvas.drawBitmap(appIcon.bitmap, null, drawRect, paintList);
+                IconAtlas.Slot slot = appIcon.getSlot();
+                if (slot != null) {
+                    slot.draw(canvas, drawRect, paintList);
+                } else {
+                    PieLauncherApp.appMenu.requestBitmap(appIcon);
+                    canvas.drawCircle(drawRect.centerX(), drawRect.centerY(),
+                            drawRect.width() >> 1, paintPlaceholder);
+                }
                 if (showAppNames) {
-                    CharSequence label = TextUtils.ellipsize(appIcon.label,
-                            paintText, maxTextWidth, TextUtils.TruncateAt.END);
+                    CharSequence label = labelCache.get(appIcon, paintText,
+                            maxTextWidth);
                     canvas.drawText(label, 0, label.length(),
                             x + labelX, y + labelY, paintText);
                 }
             }
-            x += cellWidth;
-            if (x >= wrapX) {
-                x = listPadding;
-                y += cellHeight;
-            }
         }
-        int maxHeight = y + listPadding + (x > listPadding ? cellHeight : 0);
-        maxScrollY = Math.max(maxHeight - viewHeightMinusPadding, 0);
         return invalidate;
     }
 
+    private void updateListLayout() {
+        if (listLayout.update(viewWidth, viewHeight, showAppNames())) {
+            // Rasterize the first screen while indexing.
+            PieLauncherApp.appMenu.setEagerIconCount(
+                    listLayout.getCellsPerScreen());
+        }
+    }
+
+    private void updateListOffset() {
+        updateListOffset(fadeList.get(SystemClock.uptimeMillis(),
+                prefs.getAnimationDuration()));
+    }
+
+    // The list slides in while it fades in and follows the finger
+    // while it's dragged down.
+    private void updateListOffset(float f) {
+        listLayout.offset = Math.round((1f - f) * viewHeight * .25f) +
+                Math.round(dragOffset);
+    }
+
+    private int getMaxScrollY() {
+        updateListOffset();
+        return listLayout.getMaxScrollY(getIconCount(),
+                viewHeight - getPaddingBottom());
+    }
+
     private boolean showAppNames() {
         switch (prefs.showAppNames()) {
             case Preferences.SHOW_APP_NAMES_ALWAYS:
@@ -1678,6 +1732,7 @@ public class AppPieView extends View {
             if (mode != MODE_LIST || !scroller.computeScrollOffset()) {
                 return;
             }
+            int maxScrollY = getMaxScrollY();
             if (maxY != maxScrollY) {
                 maxY = maxScrollY;
                 // OverScroller.springBack() stops the animation so we
@@ -1695,7 +1750,7 @@ public class AppPieView extends View {
 
         private void start(int pixelsPerSecond) {
             pps = -pixelsPerSecond;
-            maxY = maxScrollY;
+            maxY = getMaxScrollY();
             initFling(getScrollY());
             update();
         }
@@ -0,0 +1,38 @@
+package de.markusfisch.android.pielauncher.widget;
+
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import java.util.WeakHashMap;
+
+import de.markusfisch.android.pielauncher.content.AppMenu;
+
+// Remembers ellipsized app labels so scrolling a list with app names
+// doesn't need to measure any text. All labels are measured again if
+// the text size (font scale) or the cell width (layout) changes.
+// Must only be used from the main thread.
+class LabelCache {
+	// Weak keys so icons of apps that are gone don't stick around.
+	private final WeakHashMap<AppMenu.AppIcon, CharSequence> labels =
+			new WeakHashMap<>();
+
+	private float textSize;
+	private int maxWidth;
+
+	CharSequence get(AppMenu.AppIcon appIcon, TextPaint paint,
+			int maxWidth) {
+		float textSize = paint.getTextSize();
+		if (textSize != this.textSize || maxWidth != this.maxWidth) {
+			labels.clear();
+			this.textSize = textSize;
+			this.maxWidth = maxWidth;
+		}
+		CharSequence label = labels.get(appIcon);
+		if (label == null) {
+			label = TextUtils.ellipsize(appIcon.label, paint, maxWidth,
+					TextUtils.TruncateAt.END);
+			labels.put(appIcon, label);
+		}
+		return label;
+	}
+}
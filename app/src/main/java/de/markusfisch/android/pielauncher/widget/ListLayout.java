@@ -0,0 +1,123 @@
+package de.markusfisch.android.pielauncher.widget;
+
+// Metrics of the app list grid. They only change when the view is laid
+// out or when app names are shown or hidden, so they're not computed
+// again for every frame.
+class ListLayout {
+	private static final int MAX_COLUMNS = 5;
+
+	private final int padding;
+	private final int listTop;
+	private final int iconSize;
+	private final int iconTextPadding;
+	private final int spaceBetween;
+	private final int textHeight;
+	private final int textOffset;
+
+	private int width = -1;
+	private int height = -1;
+	private boolean showLabels;
+
+	// Read only outside of this class.
+	int columns = 1;
+	int cellWidth;
+	int cellHeight;
+	int iconX;
+	int iconY;
+	int labelX;
+	int labelY;
+	int maxTextWidth;
+
+	// Additional vertical offset while the list is faded in or dragged.
+	int offset;
+
+	ListLayout(int padding, int listTop, int iconSize, int iconTextPadding,
+			int spaceBetween, float textHeight, float textOffset) {
+		this.padding = padding;
+		this.listTop = listTop;
+		this.iconSize = iconSize;
+		this.iconTextPadding = iconTextPadding;
+		this.spaceBetween = spaceBetween;
+		this.textHeight = Math.round(textHeight);
+		this.textOffset = Math.round(textOffset);
+	}
+
+	// Returns true if the metrics have changed.
+	boolean update(int width, int height, boolean showLabels) {
+		if (width == this.width && height == this.height &&
+				showLabels == this.showLabels) {
+			return false;
+		}
+		this.width = width;
+		this.height = height;
+		this.showLabels = showLabels;
+		int innerWidth = width - padding * 2;
+		columns = Math.max(1, Math.min(MAX_COLUMNS,
+				innerWidth / (iconSize + spaceBetween)));
+		int iconAndTextHeight = iconSize + (showLabels
+				? iconTextPadding + textHeight
+				: 0);
+		cellWidth = innerWidth / columns;
+		cellHeight = iconAndTextHeight + iconTextPadding * 2;
+		maxTextWidth = cellWidth - iconTextPadding;
+		iconX = (cellWidth - iconSize) / 2;
+		iconY = (cellHeight - iconAndTextHeight) / 2;
+		labelX = cellWidth >> 1;
+		labelY = cellHeight - iconY - textOffset;
+		return true;
+	}
+
+	// Number of cells that fit on one screen.
+	int getCellsPerScreen() {
+		return columns * (height / cellHeight + 1);
+	}
+
+	int getTop() {
+		return listTop + offset;
+	}
+
+	int getLeft(int index) {
+		return padding + index % columns * cellWidth;
+	}
+
+	int getTop(int index) {
+		return getTop() + index / columns * cellHeight;
+	}
+
+	int getRows(int count) {
+		return (count + columns - 1) / columns;
+	}
+
+	// The first row that is (partially) visible at scrollY.
+	int getFirstVisibleRow(int scrollY) {
+		return Math.max(0, (scrollY - getTop()) / cellHeight);
+	}
+
+	// The last row that is (partially) visible at scrollY or -1.
+	int getLastVisibleRow(int scrollY, int height, int count) {
+		int below = scrollY + height - getTop();
+		return below < 0
+				? -1
+				: Math.min(getRows(count) - 1, below / cellHeight);
+	}
+
+	// Index of the cell at x/y in list coordinates or -1.
+	int getIndexAt(int x, int y, int count) {
+		int dx = x - padding;
+		int dy = y - getTop();
+		if (dx < 0 || dy < 0) {
+			return -1;
+		}
+		int column = dx / cellWidth;
+		if (column >= columns) {
+			return -1;
+		}
+		int index = dy / cellHeight * columns + column;
+		return index < count ? index : -1;
+	}
+
+	int getMaxScrollY(int count, int height) {
+		int contentHeight = getTop() + getRows(count) * cellHeight + padding;
+		return Math.max(contentHeight - height, 0);
+	}
+}
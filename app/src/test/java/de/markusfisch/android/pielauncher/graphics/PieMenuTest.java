@@ -0,0 +1,117 @@
+package de.markusfisch.android.pielauncher.graphics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PieMenuTest {
+	private static final int LAYOUTS = 200000;
+	private static final int MAX_ICONS = 24;
+	// Positions may differ by one pixel when rounding flips.
+	private static final int MAX_POSITION_DIFFERENCE = 1;
+	private static final double MAX_SIZE_DIFFERENCE = .01;
+
+	@Test
+	public void calculateMatchesReference() {
+		Random random = new Random(42);
+		for (int layout = 0; layout < LAYOUTS; ++layout) {
+			int numberOfIcons = 1 + random.nextInt(MAX_ICONS);
+			PieMenu pieMenu = new PieMenu();
+			ReferencePieMenu reference = new ReferencePieMenu();
+			for (int i = 0; i < numberOfIcons; ++i) {
+				pieMenu.icons.add(new PieMenu.Icon());
+				reference.icons.add(new PieMenu.Icon());
+			}
+			int centerX = random.nextInt(1500);
+			int centerY = random.nextInt(2500);
+			double radius = 50 + random.nextDouble() * 700;
+			double twist = random.nextDouble() * 20 - 10;
+			float iconScale = .5f + random.nextFloat();
+			pieMenu.set(centerX, centerY, radius, 0, iconScale);
+			pieMenu.setTwist(twist);
+			reference.set(centerX, centerY, radius, 0, iconScale);
+			reference.setTwist(twist);
+			float x;
+			float y;
+			if (layout % 50 == 0) {
+				// Cursor exactly in the center.
+				x = centerX;
+				y = centerY;
+			} else {
+				x = centerX + (float) ((random.nextDouble() - .5) *
+						radius * 3);
+				y = centerY + (float) ((random.nextDouble() - .5) *
+						radius * 3);
+			}
+			float t = random.nextBoolean() ? 1f : random.nextFloat();
+			pieMenu.calculate(x, y, t);
+			reference.calculate(x, y, t);
+			assertEquals(reference.getSelectedIcon(),
+					pieMenu.getSelectedIcon());
+			for (int i = 0; i < numberOfIcons; ++i) {
+				PieMenu.Icon actual = pieMenu.icons.get(i);
+				PieMenu.Icon expected = reference.icons.get(i);
+				assertTrue(Math.abs(expected.x - actual.x) <=
+						MAX_POSITION_DIFFERENCE);
+				assertTrue(Math.abs(expected.y - actual.y) <=
+						MAX_POSITION_DIFFERENCE);
+				assertEquals(expected.size, actual.size,
+						MAX_SIZE_DIFFERENCE);
+				assertEquals(expected.cellSize, actual.cellSize,
+						MAX_SIZE_DIFFERENCE);
+			}
+		}
+	}
+
+	@Test
+	public void calculateFollowsChangedIcons() {
+		PieMenu pieMenu = new PieMenu();
+		ReferencePieMenu reference = new ReferencePieMenu();
+		pieMenu.set(500, 800, 300, 0, 1f);
+		reference.set(500, 800, 300, 0, 1f);
+		for (int numberOfIcons : new int[]{3, 8, 5, 5, 1, 12}) {
+			pieMenu.icons.clear();
+			reference.icons.clear();
+			for (int i = 0; i < numberOfIcons; ++i) {
+				pieMenu.icons.add(new PieMenu.Icon());
+				reference.icons.add(new PieMenu.Icon());
+			}
+			pieMenu.calculate(700, 600, 1f);
+			reference.calculate(700, 600, 1f);
+			assertEquals(reference.getSelectedIcon(),
+					pieMenu.getSelectedIcon());
+			for (int i = 0; i < numberOfIcons; ++i) {
+				PieMenu.Icon actual = pieMenu.icons.get(i);
+				PieMenu.Icon expected = reference.icons.get(i);
+				assertTrue(Math.abs(expected.x - actual.x) <=
+						MAX_POSITION_DIFFERENCE);
+				assertTrue(Math.abs(expected.y - actual.y) <=
+						MAX_POSITION_DIFFERENCE);
+			}
+		}
+	}
+
+	@Test
+	public void sinAndCosMatchMath() {
+		for (double a = 0; a < PieMenu.TAU * 2; a += .001) {
+			assertEquals(Math.sin(a), PieMenu.sin(a), 1e-6);
+			assertEquals(Math.cos(a), PieMenu.cos(a), 1e-6);
+		}
+	}
+
+	@Test
+	public void powMatchesMath() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; ++i) {
+			double x = random.nextDouble() * Math.PI;
+			double exponent = random.nextDouble() * 20;
+			double expected = Math.pow(x, exponent);
+			assertEquals(expected, PieMenu.pow(x, exponent),
+					expected * 1e-5);
+		}
+		assertEquals(0, PieMenu.pow(0, 2), 0);
+	}
+}